@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.adaltas.flume.benchmarks;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.flume.Channel;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.EventDeliveryException;
+import org.apache.flume.Transaction;
+import org.apache.flume.conf.Configurable;
+import org.apache.flume.sink.AbstractSink;
+
+/**
+ * A sink taking the events from its channel in transactions of "batchSize"
+ * events and counting them, the load harness measures the source alone.
+ */
+public class CountingSink extends AbstractSink implements Configurable {
+
+    private final AtomicLong events = new AtomicLong();
+    private int batchSize;
+
+    public void configure(Context context) {
+        batchSize = context.getInteger("batchSize", 1000);
+    }
+
+    public Status process() throws EventDeliveryException {
+        Channel channel = getChannel();
+        Transaction transaction = channel.getTransaction();
+        transaction.begin();
+        try {
+            int taken = 0;
+            Event event;
+            while (taken < batchSize && (event = channel.take()) != null) {
+                taken++;
+            }
+            transaction.commit();
+            events.addAndGet(taken);
+            return taken == 0 ? Status.BACKOFF : Status.READY;
+        } catch (Throwable t) {
+            transaction.rollback();
+            throw new EventDeliveryException("Unable to take events", t);
+        } finally {
+            transaction.close();
+        }
+    }
+
+    public long getEventCount() {
+        return events.get();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.adaltas.flume.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.flume.Event;
+import org.apache.flume.event.EventBuilder;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParser;
+
+/**
+ * Builds the benchmark events and requests out of the <tt>schema</tt>
+ * payloads of the tests. The bodies are the example widget, minified and cut
+ * or repeated to the body size, the headers are realistic names followed by
+ * generated ones up to the column count.
+ */
+public final class Fixtures {
+
+    public static final String WIDGET = "example-widget.json";
+    public static final String WIDGET_MULTIPLE = "example-widget-multiple.json";
+
+    private static final String[] HEADER_NAMES = {
+        "timestamp", "host", "MachineId", "User", "Domain", "ComputerName", "SentOn", "InstalledRam"
+    };
+
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+    private Fixtures() {
+    }
+
+    /**
+     * Returns the bytes of a <tt>schema</tt> payload.
+     */
+    public static byte[] resource(String name) {
+        InputStream in = Fixtures.class.getResourceAsStream("/schema/" + name);
+        if (in == null) {
+            throw new IllegalArgumentException("Missing fixture " + name);
+        }
+        try {
+            try {
+                return ByteStreams.toByteArray(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Unable to read fixture " + name, ex);
+        }
+    }
+
+    /**
+     * Returns a <tt>schema</tt> payload without its whitespaces.
+     */
+    public static String minified(String name) {
+        return new JsonParser().parse(new String(resource(name), Charsets.UTF_8)).toString();
+    }
+
+    /**
+     * Returns the minified widget, cut or repeated to the size.
+     */
+    public static String body(int size) {
+        String widget = minified(WIDGET);
+        StringBuilder body = new StringBuilder(size + widget.length());
+        while (body.length() < size) {
+            body.append(widget);
+        }
+        return body.substring(0, size);
+    }
+
+    public static String[] headerNames(int count) {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = i < HEADER_NAMES.length ? HEADER_NAMES[i] : "header" + i;
+        }
+        return names;
+    }
+
+    /**
+     * Returns the space separated header names, the columns of the
+     * serializers.
+     */
+    public static String columns(int count) {
+        StringBuilder columns = new StringBuilder();
+        for (String name : headerNames(count)) {
+            columns.append(columns.length() == 0 ? "" : " ").append(name);
+        }
+        return columns.toString();
+    }
+
+    /**
+     * Returns the headers, their values are word characters so they pass
+     * the default header validation.
+     */
+    public static Map<String, String> headers(int count) {
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        for (String name : headerNames(count)) {
+            headers.put(name, name + "_value_" + name.length());
+        }
+        return headers;
+    }
+
+    public static List<Event> events(int batchSize, int bodySize, int headerCount) {
+        byte[] body = body(bodySize).getBytes(Charsets.UTF_8);
+        List<Event> events = new ArrayList<Event>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            events.add(EventBuilder.withBody(body, new HashMap<String, String>(headers(headerCount))));
+        }
+        return events;
+    }
+
+    /**
+     * Returns the JSON array of events posted to the source.
+     */
+    public static byte[] request(int batchSize, int bodySize, int headerCount) {
+        String body = body(bodySize);
+        List<Map<String, Object>> events = new ArrayList<Map<String, Object>>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            Map<String, Object> event = new LinkedHashMap<String, Object>();
+            event.put("headers", headers(headerCount));
+            event.put("body", body);
+            events.add(event);
+        }
+        return GSON.toJson(events).getBytes(Charsets.UTF_8);
+    }
+}
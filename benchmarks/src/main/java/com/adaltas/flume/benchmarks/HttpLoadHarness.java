@@ -0,0 +1,513 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.adaltas.flume.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import org.apache.flume.Channel;
+import org.apache.flume.ChannelSelector;
+import org.apache.flume.Context;
+import org.apache.flume.Sink;
+import org.apache.flume.channel.ChannelProcessor;
+import org.apache.flume.channel.MemoryChannel;
+import org.apache.flume.channel.ReplicatingChannelSelector;
+import org.apache.flume.conf.Configurables;
+import org.apache.flume.source.http.HTTPSourceConfigurationConstants;
+
+import net.dataservice.flume.http.source.CustomizedHttpSource;
+import net.dataservice.flume.http.source.CustomizedJSONHandler;
+
+/**
+ * Load tests the {@link CustomizedHttpSource} on localhost. The source puts
+ * the events into a memory channel drained by a {@link CountingSink}, and
+ * concurrent clients post the requests of a payload mix over keep-alive
+ * connections. After a warmup, the requests/s, events/s and latency
+ * percentiles are measured and compared to a baseline.
+ * <p>
+ * The settings are system properties:
+ * <ul>
+ * <li><tt>load.clients</tt>: concurrent clients (16)</li>
+ * <li><tt>load.warmup</tt>, <tt>load.duration</tt>: seconds of warmup (5)
+ * and measurement (20)</li>
+ * <li><tt>load.mix</tt>: comma separated <tt>&lt;batchSize&gt;x&lt;bodySize&gt;</tt>
+ * requests posted in turn (<tt>10x256,100x1024</tt>)</li>
+ * <li><tt>load.columns</tt>: headers per event (8)</li>
+ * <li><tt>load.gzip</tt>: gzip the request bodies (false)</li>
+ * <li><tt>load.ssl</tt>: post over TLS to a self-signed certificate (false)</li>
+ * <li><tt>load.channelCapacity</tt>: memory channel capacity (100000)</li>
+ * <li><tt>load.baseline</tt>: baseline properties file, none by default</li>
+ * <li><tt>load.tolerance</tt>: allowed throughput drop below the baseline (0.2)</li>
+ * <li><tt>load.recordBaseline</tt>: write the results as the baseline (false)</li>
+ * <li><tt>source.*</tt>: source configuration, such as
+ * <tt>source.parser=streaming</tt> or <tt>source.threadPool.maxThreads=200</tt></li>
+ * </ul>
+ * A throughput below the baseline by more than the tolerance throws an
+ * {@link IllegalStateException}, which fails the Maven build.
+ */
+public final class HttpLoadHarness {
+
+    private static final String SOURCE_PREFIX = "source.";
+    private static final String KEYSTORE_PASSWORD = "changeit";
+
+    private final int clients;
+    private final int warmupSeconds;
+    private final int durationSeconds;
+    private final String mix;
+    private final int columns;
+    private final boolean gzip;
+    private final boolean ssl;
+    private final int channelCapacity;
+    private final String baseline;
+    private final double tolerance;
+    private final boolean recordBaseline;
+    private final Map<String, String> sourceProperties;
+
+    private final List<byte[]> payloads = new ArrayList<byte[]>();
+    private final List<Integer> payloadEvents = new ArrayList<Integer>();
+    private int maxBatchSize;
+
+    HttpLoadHarness(Properties properties) {
+        clients = Integer.parseInt(properties.getProperty("load.clients", "16"));
+        warmupSeconds = Integer.parseInt(properties.getProperty("load.warmup", "5"));
+        durationSeconds = Integer.parseInt(properties.getProperty("load.duration", "20"));
+        mix = properties.getProperty("load.mix", "10x256,100x1024");
+        columns = Integer.parseInt(properties.getProperty("load.columns", "8"));
+        gzip = Boolean.parseBoolean(properties.getProperty("load.gzip", "false"));
+        ssl = Boolean.parseBoolean(properties.getProperty("load.ssl", "false"));
+        channelCapacity = Integer.parseInt(properties.getProperty("load.channelCapacity", "100000"));
+        baseline = properties.getProperty("load.baseline");
+        tolerance = Double.parseDouble(properties.getProperty("load.tolerance", "0.2"));
+        recordBaseline = Boolean.parseBoolean(properties.getProperty("load.recordBaseline", "false"));
+        sourceProperties = new Context(toMap(properties)).getSubProperties(SOURCE_PREFIX);
+        if (clients <= 0 || durationSeconds <= 0 || warmupSeconds < 0) {
+            throw new IllegalArgumentException("load.clients and load.duration must be positive");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        HttpLoadHarness harness = new HttpLoadHarness(System.getProperties());
+        Result result = harness.run();
+        System.out.println(result);
+        harness.checkBaseline(result);
+    }
+
+    private static Map<String, String> toMap(Properties properties) {
+        Map<String, String> map = new HashMap<String, String>();
+        for (String name : properties.stringPropertyNames()) {
+            map.put(name, properties.getProperty(name));
+        }
+        return map;
+    }
+
+    private void createPayloads() throws IOException {
+        for (String request : mix.split(",")) {
+            String[] sizes = request.trim().split("x");
+            if (sizes.length != 2) {
+                throw new IllegalArgumentException("Invalid load.mix request " + request
+                        + ", expected <batchSize>x<bodySize>");
+            }
+            int batchSize = Integer.parseInt(sizes[0]);
+            byte[] payload = Fixtures.request(batchSize, Integer.parseInt(sizes[1]), columns);
+            if (gzip) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                GZIPOutputStream out = new GZIPOutputStream(compressed);
+                out.write(payload);
+                out.close();
+                payload = compressed.toByteArray();
+            }
+            payloads.add(payload);
+            payloadEvents.add(batchSize);
+            maxBatchSize = Math.max(maxBatchSize, batchSize);
+        }
+    }
+
+    Result run() throws Exception {
+        createPayloads();
+        int port = freePort();
+
+        Channel channel = new MemoryChannel();
+        channel.setName("load-channel");
+        Context channelContext = new Context();
+        channelContext.put("capacity", String.valueOf(channelCapacity));
+        channelContext.put("transactionCapacity", String.valueOf(Math.max(maxBatchSize, 1000)));
+        Configurables.configure(channel, channelContext);
+
+        ChannelSelector selector = new ReplicatingChannelSelector();
+        selector.setChannels(Collections.singletonList(channel));
+
+        CountingSink sink = new CountingSink();
+        sink.setName("load-sink");
+        sink.setChannel(channel);
+        Configurables.configure(sink, new Context());
+
+        CustomizedHttpSource source = new CustomizedHttpSource();
+        source.setName("load-source");
+        source.setChannelProcessor(new ChannelProcessor(selector));
+        Context sourceContext = new Context();
+        sourceContext.put(HTTPSourceConfigurationConstants.CONFIG_BIND, "127.0.0.1");
+        sourceContext.put(HTTPSourceConfigurationConstants.CONFIG_PORT, String.valueOf(port));
+        sourceContext.put(HTTPSourceConfigurationConstants.CONFIG_HANDLER, CustomizedJSONHandler.class.getName());
+        File keystore = null;
+        if (ssl) {
+            keystore = createKeystore();
+            sourceContext.put(HTTPSourceConfigurationConstants.SSL_ENABLED, "true");
+            sourceContext.put(HTTPSourceConfigurationConstants.SSL_KEYSTORE, keystore.getPath());
+            sourceContext.put(HTTPSourceConfigurationConstants.SSL_KEYSTORE_PASSWORD, KEYSTORE_PASSWORD);
+        }
+        sourceContext.putAll(sourceProperties);
+        Configurables.configure(source, sourceContext);
+
+        // keep a connection per client alive, the JDK keeps 5 by default
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(clients));
+
+        channel.start();
+        sink.start();
+        Thread drainer = startDrainer(sink);
+        source.start();
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        try {
+            URL url = new URL((ssl ? "https" : "http") + "://127.0.0.1:" + port + "/");
+            long measureStart = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+            long measureEnd = measureStart + TimeUnit.SECONDS.toNanos(durationSeconds);
+            List<Future<Client>> futures = new ArrayList<Future<Client>>();
+            for (int i = 0; i < clients; i++) {
+                futures.add(executor.submit(new Client(url, i, measureStart, measureEnd)));
+            }
+            Result result = new Result(durationSeconds);
+            for (Future<Client> future : futures) {
+                result.add(future.get());
+            }
+            result.complete();
+            return result;
+        } finally {
+            executor.shutdownNow();
+            source.stop();
+            drainer.interrupt();
+            drainer.join();
+            sink.stop();
+            channel.stop();
+            if (keystore != null) {
+                keystore.delete();
+            }
+        }
+    }
+
+    private static Thread startDrainer(final Sink sink) {
+        Thread drainer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        if (sink.process() == Sink.Status.BACKOFF) {
+                            Thread.sleep(1);
+                        }
+                    }
+                } catch (InterruptedException ex) {
+                    // stopped
+                } catch (Exception ex) {
+                    throw new IllegalStateException("Counting sink failed", ex);
+                }
+            }
+        }, "load-sink-drainer");
+        drainer.start();
+        return drainer;
+    }
+
+    private static int freePort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Generates a keystore with a self-signed certificate for localhost.
+     */
+    private static File createKeystore() throws Exception {
+        File keystore = File.createTempFile("load-keystore", ".jks");
+        keystore.delete();
+        String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+        Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "load", "-keyalg", "RSA",
+                "-keysize", "2048", "-dname", "CN=localhost", "-validity", "1",
+                "-keystore", keystore.getPath(), "-storetype", "JKS",
+                "-storepass", KEYSTORE_PASSWORD, "-keypass", KEYSTORE_PASSWORD)
+                .redirectErrorStream(true).start();
+        drain(process.getInputStream());
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("keytool failed to create " + keystore);
+        }
+        return keystore;
+    }
+
+    private static SSLSocketFactory trustAllSocketFactory() throws Exception {
+        TrustManager trustAll = new X509TrustManager() {
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        };
+        // the Jetty 6 NIO SSL connector breaks keep-alive TLS 1.3 connections of the JDK client
+        SSLContext context = SSLContext.getInstance("TLSv1.2");
+        context.init(null, new TrustManager[]{trustAll}, null);
+        return context.getSocketFactory();
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        if (in == null) {
+            return;
+        }
+        try {
+            byte[] buffer = new byte[4096];
+            while (in.read(buffer) >= 0) {
+                // the response body is read to reuse the connection
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    void checkBaseline(Result result) throws IOException {
+        if (baseline == null) {
+            return;
+        }
+        File file = new File(baseline);
+        Properties expected = new Properties();
+        expected.setProperty("mix", mix);
+        expected.setProperty("clients", String.valueOf(clients));
+        expected.setProperty("gzip", String.valueOf(gzip));
+        expected.setProperty("ssl", String.valueOf(ssl));
+        if (recordBaseline) {
+            expected.setProperty("requestsPerSecond", String.valueOf(Math.round(result.requestsPerSecond())));
+            expected.setProperty("eventsPerSecond", String.valueOf(Math.round(result.eventsPerSecond())));
+            OutputStream out = new FileOutputStream(file);
+            try {
+                expected.store(out, "HttpLoadHarness baseline, recorded with load.recordBaseline=true");
+            } finally {
+                out.close();
+            }
+            System.out.println("Recorded the baseline " + file);
+            return;
+        }
+        if (!file.exists()) {
+            throw new IllegalStateException("Missing baseline " + file + ", record it with load.recordBaseline=true");
+        }
+        Properties recorded = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            recorded.load(in);
+        } finally {
+            in.close();
+        }
+        for (String setting : Arrays.asList("mix", "clients", "gzip", "ssl")) {
+            if (!expected.getProperty(setting).equals(recorded.getProperty(setting))) {
+                throw new IllegalStateException("The baseline " + file + " was recorded with " + setting + "="
+                        + recorded.getProperty(setting) + " instead of " + expected.getProperty(setting));
+            }
+        }
+        List<String> regressions = new ArrayList<String>();
+        check(regressions, "requestsPerSecond", result.requestsPerSecond(), recorded);
+        check(regressions, "eventsPerSecond", result.eventsPerSecond(), recorded);
+        if (!regressions.isEmpty()) {
+            throw new IllegalStateException("Throughput regressed past the baseline " + file + ": " + regressions);
+        }
+        System.out.println("Throughput within " + Math.round(tolerance * 100) + "% of the baseline " + file);
+    }
+
+    private void check(List<String> regressions, String metric, double actual, Properties recorded) {
+        double minimum = Double.parseDouble(recorded.getProperty(metric, "0")) * (1 - tolerance);
+        if (actual < minimum) {
+            regressions.add(String.format("%s %.0f < %.0f", metric, actual, minimum));
+        }
+    }
+
+    /**
+     * Posts the payloads in turn on a keep-alive connection until the end of
+     * the measurement and records the latencies within it.
+     */
+    private final class Client implements Callable<Client> {
+
+        private final URL url;
+        private final long measureStart;
+        private final long measureEnd;
+        private int next;
+        private long[] latencies = new long[1 << 14];
+        private int latencyCount;
+        private long requests;
+        private long events;
+        private long errors;
+
+        Client(URL url, int index, long measureStart, long measureEnd) {
+            this.url = url;
+            this.next = index;
+            this.measureStart = measureStart;
+            this.measureEnd = measureEnd;
+        }
+
+        public Client call() throws Exception {
+            SSLSocketFactory socketFactory = ssl ? trustAllSocketFactory() : null;
+            long now = System.nanoTime();
+            while (now < measureEnd && !Thread.currentThread().isInterrupted()) {
+                int payload = next++ % payloads.size();
+                boolean accepted = post(payloads.get(payload), socketFactory);
+                long end = System.nanoTime();
+                if (now >= measureStart) {
+                    requests++;
+                    if (accepted) {
+                        events += payloadEvents.get(payload);
+                        record(end - now);
+                    } else {
+                        errors++;
+                    }
+                }
+                now = end;
+            }
+            return this;
+        }
+
+        private boolean post(byte[] payload, SSLSocketFactory socketFactory) throws IOException {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            if (socketFactory != null) {
+                HttpsURLConnection https = (HttpsURLConnection) connection;
+                https.setSSLSocketFactory(socketFactory);
+                https.setHostnameVerifier(new HostnameVerifier() {
+                    public boolean verify(String hostname, SSLSession session) {
+                        return true;
+                    }
+                });
+            }
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(payload.length);
+            connection.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+            if (gzip) {
+                connection.setRequestProperty("Content-Encoding", "gzip");
+            }
+            OutputStream out = connection.getOutputStream();
+            try {
+                out.write(payload);
+            } finally {
+                out.close();
+            }
+            int status = connection.getResponseCode();
+            drain(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+            return status == HttpURLConnection.HTTP_OK;
+        }
+
+        private void record(long latency) {
+            if (latencyCount == latencies.length) {
+                latencies = Arrays.copyOf(latencies, latencies.length * 2);
+            }
+            latencies[latencyCount++] = latency;
+        }
+    }
+
+    /**
+     * The totals of the clients over the measurement.
+     */
+    static final class Result {
+
+        private final int seconds;
+        private long requests;
+        private long events;
+        private long errors;
+        private long[] latencies = new long[0];
+
+        Result(int seconds) {
+            this.seconds = seconds;
+        }
+
+        void add(Client client) {
+            requests += client.requests;
+            events += client.events;
+            errors += client.errors;
+            int offset = latencies.length;
+            latencies = Arrays.copyOf(latencies, offset + client.latencyCount);
+            System.arraycopy(client.latencies, 0, latencies, offset, client.latencyCount);
+        }
+
+        void complete() {
+            Arrays.sort(latencies);
+        }
+
+        double requestsPerSecond() {
+            return (double) (requests - errors) / seconds;
+        }
+
+        double eventsPerSecond() {
+            return (double) events / seconds;
+        }
+
+        /**
+         * Returns the latency percentile in milliseconds.
+         */
+        double percentile(double percentile) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            return latencies[Math.max(0, index)] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("requests/s: %.0f%nevents/s: %.0f%nerrors: %d%n"
+                            + "latency ms: p50 %.2f, p99 %.2f, p999 %.2f",
+                    requestsPerSecond(), eventsPerSecond(), errors,
+                    percentile(50), percentile(99), percentile(99.9));
+        }
+    }
+}
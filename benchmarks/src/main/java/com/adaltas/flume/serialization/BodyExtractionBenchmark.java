@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.adaltas.flume.serialization;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.type.TypeReference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.adaltas.flume.benchmarks.Fixtures;
+import com.google.common.base.Charsets;
+
+/**
+ * Compares reading the columns of a JSON body by binding the whole body to a
+ * map with an {@link ObjectMapper}, as the text serializer used to, with the
+ * streaming scan of the {@link JsonBodyExtractor}. The map only resolves top
+ * level columns, its cost is the same with paths.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BodyExtractionBenchmark {
+
+    @Param({Fixtures.WIDGET, Fixtures.WIDGET_MULTIPLE})
+    public String fixture;
+
+    @Param({"MachineId User Domain", "MachineId Data[0].Properties.CPU.Value", "Data[*].SampleDate"})
+    public String columns;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private byte[] body;
+    private String[] columnNames;
+    private String[] row;
+    private JsonBodyExtractor extractor;
+
+    @Setup
+    public void setUp() {
+        body = Fixtures.minified(fixture).getBytes(Charsets.UTF_8);
+        columnNames = HeaderAndBodyTextEventSerializer.compileColumns(columns);
+        row = new String[columnNames.length];
+        extractor = new JsonBodyExtractor(columnNames);
+    }
+
+    @Benchmark
+    public String[] objectMapper() throws IOException {
+        Map<String, Object> values = objectMapper.readValue(body, new TypeReference<Map<String, Object>>() {
+        });
+        for (int i = 0; i < columnNames.length; i++) {
+            Object value = values.get(columnNames[i]);
+            row[i] = value == null ? null : value.toString();
+        }
+        return row;
+    }
+
+    @Benchmark
+    public String[] extractor() throws IOException {
+        Arrays.fill(row, null);
+        extractor.extract(body, row);
+        return row;
+    }
+}
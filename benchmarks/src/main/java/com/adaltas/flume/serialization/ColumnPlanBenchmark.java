@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.adaltas.flume.serialization;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.adaltas.flume.benchmarks.Fixtures;
+
+/**
+ * Compares selecting the column values of an event by tokenizing the columns
+ * into a new map, as the serializers used to for every event, with filling
+ * the reusable row of the columns compiled once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ColumnPlanBenchmark {
+
+    @Param({"4", "16", "64"})
+    public int columnCount;
+
+    private String columns;
+    private Map<String, String> headers;
+    private String[] columnNames;
+    private String[] row;
+
+    @Setup
+    public void setUp() {
+        columns = Fixtures.columns(columnCount);
+        headers = Fixtures.headers(columnCount);
+        columnNames = HeaderAndBodyTextEventSerializer.compileColumns(columns);
+        row = new String[columnNames.length];
+    }
+
+    @Benchmark
+    public Map<String, String> tokenizer() {
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        StringTokenizer tok = new StringTokenizer(columns);
+        while (tok.hasMoreTokens()) {
+            String key = tok.nextToken();
+            values.put(key, headers.get(key));
+        }
+        return values;
+    }
+
+    @Benchmark
+    public String[] compiled() {
+        for (int i = 0; i < columnNames.length; i++) {
+            row[i] = headers.get(columnNames[i]);
+        }
+        return row;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.adaltas.flume.serialization;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.serialization.EventSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.adaltas.flume.benchmarks.Fixtures;
+import com.google.gson.Gson;
+
+/**
+ * Compares writing a batch of JSON lines by binding a map of the columns
+ * with {@link Gson}, as the {@link JSONEventSerializer} used to, with the
+ * serializer encoding the columns straight into its buffer with the
+ * {@link JsonEncoder}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonEncodingBenchmark {
+
+    @Param({"100"})
+    public int batchSize;
+
+    @Param({"256", "4096"})
+    public int bodySize;
+
+    @Param({"4", "16"})
+    public int columnCount;
+
+    private final Gson gson = new Gson();
+    private List<Event> events;
+    private String columns;
+    private EventSerializer serializer;
+
+    @Setup
+    public void setUp() {
+        events = Fixtures.events(batchSize, bodySize, columnCount);
+        columns = Fixtures.columns(columnCount) + " body";
+        Context context = new Context();
+        context.put("columns", columns);
+        serializer = new JSONEventSerializer.Builder().build(context, NullOutputStream.NULL_OUTPUT_STREAM);
+    }
+
+    @Benchmark
+    public void gson() throws IOException {
+        for (Event e : events) {
+            Map<String, String> event = new LinkedHashMap<String, String>();
+            StringTokenizer tok = new StringTokenizer(columns);
+            while (tok.hasMoreTokens()) {
+                String key = tok.nextToken();
+                if (key.equals("body")) {
+                    event.put(key, new String(e.getBody()));
+                } else {
+                    event.put(key, e.getHeaders().get(key));
+                }
+            }
+            NullOutputStream.NULL_OUTPUT_STREAM.write(gson.toJson(event).getBytes());
+            NullOutputStream.NULL_OUTPUT_STREAM.write('\n');
+        }
+    }
+
+    @Benchmark
+    public void encoder() throws IOException {
+        for (Event e : events) {
+            serializer.write(e);
+        }
+        serializer.flush();
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.adaltas.flume.serialization;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.serialization.EventSerializer;
+import org.apache.flume.serialization.EventSerializerFactory;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.adaltas.flume.benchmarks.Fixtures;
+import com.adaltas.flume.metrics.FlumeMetrics;
+import com.google.common.io.CountingOutputStream;
+
+/**
+ * Measures writing and flushing a batch of events, like a sink transaction,
+ * with the NATIVE and CSV formats of the {@link HeaderAndBodyTextEventSerializer},
+ * the {@link JSONEventSerializer} and the {@link AvroColumnEventSerializer}.
+ * The serializers write the columns and the body. The bytes written and the
+ * events are reported as counters, their ratio is the size of an event in
+ * each format. The benchmark runs with and without the serializer metrics,
+ * their overhead must stay under 1%.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializerBenchmark {
+
+    @Param({"NATIVE", "CSV", "JSON", "AVRO"})
+    public String format;
+
+    @Param({"100"})
+    public int batchSize;
+
+    @Param({"256", "4096"})
+    public int bodySize;
+
+    @Param({"4", "16"})
+    public int columnCount;
+
+    @Param({"none"})
+    public String compression;
+
+    @Param({"true", "false"})
+    public boolean metrics;
+
+    private List<Event> events;
+    private CountingOutputStream out;
+    private EventSerializer serializer;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Output {
+        public long bytes;
+        public long events;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+            events = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        events = Fixtures.events(batchSize, bodySize, columnCount);
+        out = new CountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+
+        Context context = new Context();
+        context.put(FlumeMetrics.ENABLED, String.valueOf(metrics));
+        String builder;
+        if (format.equals("JSON")) {
+            builder = JSONEventSerializer.Builder.class.getName();
+            context.put("columns", Fixtures.columns(columnCount) + " body");
+            context.put(BlockCompressionOutputStream.COMPRESSION, compression);
+        } else if (format.equals("AVRO")) {
+            builder = AvroColumnEventSerializer.Builder.class.getName();
+            context.put("columns", Fixtures.columns(columnCount) + " body");
+            // the Avro codecs have their own names
+            context.put("compressionCodec", compression.equals("none") ? "null"
+                    : compression.equals("gzip") ? "deflate" : compression);
+        } else {
+            builder = HeaderAndBodyTextEventSerializer.Builder.class.getName();
+            context.put("format", format);
+            context.put("columns", Fixtures.columns(columnCount));
+            context.put(BlockCompressionOutputStream.COMPRESSION, compression);
+        }
+        serializer = EventSerializerFactory.getInstance(builder, context, out);
+        serializer.afterCreate();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        serializer.beforeClose();
+    }
+
+    @Benchmark
+    public void writeBatch(Output output) throws IOException {
+        long written = out.getCount();
+        for (Event event : events) {
+            serializer.write(event);
+        }
+        serializer.flush();
+        output.bytes += out.getCount() - written;
+        output.events += events.size();
+    }
+}
@@ -0,0 +1,60 @@
+package net.dataservice.flume.http.source;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.flume.Context;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cookie id generators shared by the Jetty threads under
+ * contention. The <tt>baseline</tt> generator is the
+ * {@link UUID#randomUUID()} the handler used to call.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(64)
+@State(Scope.Benchmark)
+public class CookieIdBenchmark {
+
+    @Param({"baseline", CookieIdGenerators.UUID_GENERATOR, CookieIdGenerators.RANDOM_GENERATOR,
+            CookieIdGenerators.TIME_GENERATOR})
+    public String generator;
+
+    private CookieIdGenerator ids;
+
+    @Setup
+    public void setUp() throws Exception {
+        if (generator.equals("baseline")) {
+            ids = new CookieIdGenerator() {
+                public long nextId() {
+                    return UUID.randomUUID().getMostSignificantBits();
+                }
+
+                public void configure(Context context) {
+                }
+            };
+        } else {
+            ids = CookieIdGenerators.create(generator, new Context());
+        }
+    }
+
+    @Benchmark
+    public long nextId() {
+        return ids.nextId();
+    }
+}
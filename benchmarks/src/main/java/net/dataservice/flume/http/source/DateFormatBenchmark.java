@@ -0,0 +1,50 @@
+package net.dataservice.flume.http.source;
+
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares formatting the <tt>Date-Time</tt> header with a new
+ * {@link DateTime}, as the handler used to, with a shared Joda formatter and
+ * with the {@link CachedDateFormatter}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DateFormatBenchmark {
+
+    private static final String PATTERN = "yyyyMMdd HH:mm:ss";
+
+    private final DateTimeFormatter formatter = DateTimeFormat.forPattern(PATTERN);
+    private final CachedDateFormatter cached = CachedDateFormatter.forPattern(PATTERN);
+
+    @Benchmark
+    public String dateTime() {
+        return new DateTime().toString(PATTERN);
+    }
+
+    @Benchmark
+    public String formatter() {
+        return formatter.print(System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public String cached() {
+        return cached.format(System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,102 @@
+package net.dataservice.flume.http.source;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.flume.Event;
+import org.apache.flume.event.EventBuilder;
+import org.apache.flume.event.SimpleEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.adaltas.flume.benchmarks.Fixtures;
+import com.google.common.base.Charsets;
+
+/**
+ * Compares adding the request headers to every event of a batch by copying
+ * them into the event headers, as the handler used to, with layering the
+ * shared request headers under the event headers with a
+ * {@link LayeredHeaderMap}. With <tt>iterate</tt>, the headers are also read
+ * like a serializer without columns does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HeaderEnrichmentBenchmark {
+
+    @Param({"100"})
+    public int batchSize;
+
+    @Param({"4", "16"})
+    public int columnCount;
+
+    @Param({"false", "true"})
+    public boolean iterate;
+
+    private List<Map<String, String>> eventHeaders;
+    private Map<String, String> requestHeaders;
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        eventHeaders = new ArrayList<Map<String, String>>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            eventHeaders.add(new HashMap<String, String>(Fixtures.headers(columnCount)));
+        }
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Date-Time", "20170711 10:00:00");
+        headers.put("User-Agent", "Mozilla/5.0 (X11; Linux x86_64)");
+        headers.put("Referer", "http://www.example.com/index.html");
+        headers.put("X-Forwarded-For", "10.0.0.1");
+        headers.put("uuid_tt_dd", "1234567890_20170711");
+        headers.put("dc_session_id", "1499767200000");
+        requestHeaders = Collections.unmodifiableMap(headers);
+        body = Fixtures.body(256).getBytes(Charsets.UTF_8);
+    }
+
+    @Benchmark
+    public void putAll(Blackhole bh) {
+        for (Map<String, String> headers : eventHeaders) {
+            headers.putAll(requestHeaders);
+            consume(bh, EventBuilder.withBody(body, headers));
+        }
+    }
+
+    @Benchmark
+    public void layered(Blackhole bh) {
+        for (Map<String, String> headers : eventHeaders) {
+            Event event = new SimpleEvent();
+            event.setBody(body);
+            event.setHeaders(new LayeredHeaderMap(headers, requestHeaders));
+            consume(bh, event);
+        }
+    }
+
+    private void consume(Blackhole bh, Event event) {
+        if (iterate) {
+            for (Map.Entry<String, String> entry : event.getHeaders().entrySet()) {
+                bh.consume(entry.getKey());
+                bh.consume(entry.getValue());
+            }
+        } else {
+            bh.consume(event);
+        }
+    }
+}
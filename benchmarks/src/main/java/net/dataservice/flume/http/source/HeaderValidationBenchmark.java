@@ -0,0 +1,70 @@
+package net.dataservice.flume.http.source;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.apache.flume.Context;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.adaltas.flume.benchmarks.Fixtures;
+
+/**
+ * Compares the regular expression the handler used to match the validated
+ * headers with, with the compiled checks of the {@link HeaderValidator}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HeaderValidationBenchmark {
+
+    @Param({"1", "4", "8"})
+    public int columnCount;
+
+    private final Pattern pattern = Pattern.compile("^\\w+$");
+    private String[] names;
+    private Map<String, String> headers;
+    private HeaderValidator validator;
+
+    @Setup
+    public void setUp() throws Exception {
+        names = Fixtures.headerNames(columnCount);
+        headers = Fixtures.headers(columnCount);
+        StringBuilder validated = new StringBuilder();
+        for (String name : names) {
+            validated.append(validated.length() == 0 ? "" : ",").append(name);
+        }
+        Context context = new Context();
+        context.put(CustomizedHttpSourceConstants.VALIDATE_HEADERS, validated.toString());
+        validator = HeaderValidator.configure(context);
+    }
+
+    @Benchmark
+    public boolean regex() {
+        for (String name : names) {
+            String value = headers.get(name);
+            if (value == null || !pattern.matcher(value).find()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Benchmark
+    public boolean compiled() {
+        return validator.validate(headers);
+    }
+}
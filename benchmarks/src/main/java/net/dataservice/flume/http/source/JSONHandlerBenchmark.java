@@ -0,0 +1,111 @@
+package net.dataservice.flume.http.source;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.Cookie;
+
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.adaltas.flume.benchmarks.FixtureRequest;
+import com.adaltas.flume.benchmarks.Fixtures;
+
+/**
+ * Measures {@link CustomizedJSONHandler#getEvents} on a request, from the
+ * body bytes to the enriched and validated events, with both parsers. The
+ * benchmark runs with and without the source metrics, their overhead must
+ * stay under 1%.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JSONHandlerBenchmark {
+
+    @Param({"gson", "streaming"})
+    public String parser;
+
+    @Param({"1", "100"})
+    public int batchSize;
+
+    @Param({"256", "4096"})
+    public int bodySize;
+
+    @Param({"8"})
+    public int columnCount;
+
+    @Param({"identity"})
+    public String contentEncoding;
+
+    @Param({"false"})
+    public boolean validate;
+
+    @Param({"true", "false"})
+    public boolean metrics;
+
+    private CustomizedJSONHandler handler;
+    private byte[] body;
+    private Cookie[] cookies;
+
+    @Setup
+    public void setUp() throws IOException {
+        Context context = new Context();
+        context.put(CustomizedHttpSourceConstants.PARSER, parser);
+        if (validate) {
+            StringBuilder headers = new StringBuilder();
+            for (String name : Fixtures.headerNames(columnCount)) {
+                headers.append(headers.length() == 0 ? "" : ",").append(name);
+            }
+            context.put(CustomizedHttpSourceConstants.VALIDATE_HEADERS, headers.toString());
+        }
+        handler = new CustomizedJSONHandler();
+        handler.configure(context);
+        if (metrics) {
+            handler.setMetrics(SourceMetrics.configure("benchmark", context));
+        }
+
+        body = Fixtures.request(batchSize, bodySize, columnCount);
+        if (RequestBodyDecoder.GZIP.equals(contentEncoding)) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+            gzip.write(body);
+            gzip.close();
+            body = compressed.toByteArray();
+        }
+        // a returning visitor, the cookie and session ids are read from the request
+        cookies = new Cookie[]{
+            new Cookie("uuid_tt_dd", "1234567890_20170711"),
+            new Cookie("dc_session_id", String.valueOf(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1)))
+        };
+    }
+
+    @Benchmark
+    public List<Event> getEvents() throws Exception {
+        FixtureRequest request = new FixtureRequest(body)
+                .header("User-Agent", "Mozilla/5.0 (X11; Linux x86_64)")
+                .header("Referer", "http://www.example.com/index.html")
+                .header("X-Forwarded-For", "10.0.0.1, 10.0.0.2")
+                .cookies(cookies);
+        if (!RequestBodyDecoder.IDENTITY.equals(contentEncoding)) {
+            request.header(RequestBodyDecoder.CONTENT_ENCODING, contentEncoding);
+        }
+        return handler.getEvents(request);
+    }
+}
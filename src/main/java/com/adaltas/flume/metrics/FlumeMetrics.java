@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.adaltas.flume.metrics;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.flume.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+
+/**
+ * The Dropwizard metrics registry shared by the source and the serializers
+ * of the agent. The registry is exposed over JMX in the
+ * <tt>flume.metrics</tt> domain as soon as it is used.
+ * <p>
+ * The components read the following configurations from their context: <p>
+ * <tt>metrics.enabled</tt>: record the metrics, true by default. <p>
+ * <tt>metrics.reporter</tt>: the class name of a {@link MetricsReporter}
+ * also reporting the registry, such as {@link Slf4jMetricsReporter}. <p>
+ * <tt>metrics.reporter.*</tt>: the configuration of the reporter. <p>
+ * A reporter class is started once per agent, the serializers created on
+ * every file roll share it.
+ */
+public final class FlumeMetrics {
+
+    public static final String ENABLED = "metrics.enabled";
+    public static final String REPORTER = "metrics.reporter";
+    public static final String REPORTER_PREFIX = "metrics.reporter.";
+    public static final String JMX_DOMAIN = "flume.metrics";
+
+    private static final String REGISTRY = "flume";
+    private static final Logger LOG = LoggerFactory.getLogger(FlumeMetrics.class);
+
+    private static JmxReporter jmxReporter;
+    private static final Set<String> REPORTERS = new HashSet<String>();
+
+    private FlumeMetrics() {
+    }
+
+    /**
+     * Returns the shared registry, exposed over JMX.
+     */
+    public static synchronized MetricRegistry registry() {
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(REGISTRY);
+        if (jmxReporter == null) {
+            jmxReporter = JmxReporter.forRegistry(registry)
+                    .inDomain(JMX_DOMAIN)
+                    .convertDurationsTo(TimeUnit.MILLISECONDS)
+                    .build();
+            jmxReporter.start();
+        }
+        return registry;
+    }
+
+    /**
+     * @return false when <tt>metrics.enabled</tt> is false
+     */
+    public static boolean isEnabled(Context context) {
+        return context.getBoolean(ENABLED, true);
+    }
+
+    /**
+     * Starts the reporter configured in the context, unless a reporter of
+     * the same class is already running.
+     */
+    public static synchronized void startReporter(Context context) {
+        String className = context.getString(REPORTER);
+        if (className == null || className.trim().isEmpty() || !REPORTERS.add(className.trim())) {
+            return;
+        }
+        className = className.trim();
+        MetricsReporter reporter;
+        try {
+            reporter = (MetricsReporter) Class.forName(className).getDeclaredConstructor().newInstance();
+        } catch (Exception ex) {
+            REPORTERS.remove(className);
+            throw new IllegalArgumentException("Unable to create the metrics reporter " + className, ex);
+        }
+        reporter.start(registry(), new Context(context.getSubProperties(REPORTER_PREFIX)));
+        LOG.info("Started the metrics reporter {}", className);
+    }
+}
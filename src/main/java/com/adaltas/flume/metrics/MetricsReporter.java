@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.adaltas.flume.metrics;
+
+import org.apache.flume.Context;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Reports the shared metrics registry, in addition to JMX. The class is
+ * configured with <tt>metrics.reporter</tt> and must have a public no-arg
+ * constructor. It is started once and runs for the life of the agent.
+ */
+public interface MetricsReporter {
+
+    /**
+     * Starts reporting the registry.
+     *
+     * @param context the <tt>metrics.reporter.*</tt> configuration, without
+     *                the prefix
+     */
+    void start(MetricRegistry registry, Context context);
+}
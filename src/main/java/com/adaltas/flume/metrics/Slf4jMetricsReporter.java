@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.adaltas.flume.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.flume.Context;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Slf4jReporter;
+
+/**
+ * Logs the metrics every <tt>metrics.reporter.period</tt> seconds (60 by
+ * default) with the <tt>com.adaltas.flume.metrics</tt> logger, at INFO level.
+ */
+public class Slf4jMetricsReporter implements MetricsReporter {
+
+    private static final String PERIOD = "period";
+    private static final long PERIOD_DFLT = 60;
+
+    public void start(MetricRegistry registry, Context context) {
+        long period = context.getLong(PERIOD, PERIOD_DFLT);
+        if (period <= 0) {
+            throw new IllegalArgumentException("metrics.reporter.period must be positive");
+        }
+        Slf4jReporter.forRegistry(registry)
+                .outputTo(LoggerFactory.getLogger("com.adaltas.flume.metrics"))
+                .convertDurationsTo(TimeUnit.MILLISECONDS)
+                .build()
+                .start(period, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.adaltas.flume.serialization;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.util.Utf8;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.serialization.EventSerializer;
+import org.codehaus.jackson.node.NullNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class writes the events as the records of an Avro container file. The
+ * schema is a record with a nullable string field per column of the "columns"
+ * configuration, the column names are turned into valid Avro names. The column
+ * named like the "body" configuration holds the event body, the other columns
+ * are read from the headers and, with "jsonBody", from the JSON body like the
+ * {@link HeaderAndBodyTextEventSerializer}.
+ * The records are buffered into blocks of about "syncIntervalBytes" bytes,
+ * each block is compressed with the "compressionCodec" ("null", "deflate" or
+ * "snappy") and written on flush. A container file cannot be appended to, so
+ * reopening a file is not supported.
+ * The events, bytes and write latency are recorded by {@link SerializerMetrics}
+ * as "serializer.avro.*" unless "metrics.enabled" is false.
+ */
+public class AvroColumnEventSerializer implements EventSerializer {
+
+    private final String COLUMNS = "columns";
+    private final String BODY = "body";
+    private final String BODY_DFLT = "body";
+    private final String JSON_BODY = "jsonBody";
+    private final boolean JSON_BODY_DFLT = false;
+    private final String SYNC_INTERVAL_BYTES = "syncIntervalBytes";
+    private final int SYNC_INTERVAL_BYTES_DFLT = 2048000;
+    private final String COMPRESSION_CODEC = "compressionCodec";
+    private final String COMPRESSION_CODEC_DFLT = "null";
+
+    private static final String RECORD_NAME = "Event";
+    private static final String RECORD_NAMESPACE = "com.adaltas.flume";
+
+    private final OutputStream out;
+    private final SerializerMetrics metrics;
+    private final String[] columnNames;
+    private final int bodyColumn;
+    // the columns other than the body, read from the headers and the JSON body
+    private final String[] rowColumns;
+    private final JsonBodyExtractor bodyExtractor;
+    private final int syncIntervalBytes;
+    private final String compressionCodec;
+    private final Schema schema;
+
+    // reusable row of the column values and record written from it
+    private final String[] row;
+    private final GenericData.Record record;
+    private DataFileWriter<GenericRecord> dataFileWriter;
+
+    private final static Logger logger = LoggerFactory.getLogger(AvroColumnEventSerializer.class);
+
+    private AvroColumnEventSerializer(OutputStream out, Context ctx) {
+        logger.debug("Starting up AvroColumnEventSerializer");
+        this.metrics = SerializerMetrics.configure("avro", ctx);
+        this.out = this.metrics == null ? out : this.metrics.countBytesOut(out);
+        this.columnNames = HeaderAndBodyTextEventSerializer.compileColumns(ctx.getString(COLUMNS));
+        if (this.columnNames == null || this.columnNames.length == 0) {
+            throw new IllegalArgumentException("AvroColumnEventSerializer requires " + COLUMNS);
+        }
+        this.bodyColumn = Arrays.asList(this.columnNames).indexOf(ctx.getString(BODY, BODY_DFLT));
+        this.rowColumns = withoutColumn(this.columnNames, this.bodyColumn);
+        this.bodyExtractor = ctx.getBoolean(JSON_BODY, JSON_BODY_DFLT)
+                ? new JsonBodyExtractor(this.rowColumns, false) : null;
+        this.syncIntervalBytes = ctx.getInteger(SYNC_INTERVAL_BYTES, SYNC_INTERVAL_BYTES_DFLT);
+        this.compressionCodec = ctx.getString(COMPRESSION_CODEC, COMPRESSION_CODEC_DFLT);
+        // fail on an unknown codec when the sink is configured, not on its first file
+        CodecFactory.fromString(this.compressionCodec);
+
+        this.schema = createSchema(this.columnNames);
+        logger.debug("Serializing events with schema: {}", this.schema);
+        this.row = new String[this.rowColumns.length];
+        this.record = new GenericData.Record(this.schema);
+    }
+
+    /**
+     * Returns the columns without the one at the index, or the columns
+     * themselves if the index is negative.
+     */
+    static String[] withoutColumn(String[] columns, int index) {
+        if (index < 0) {
+            return columns;
+        }
+        String[] others = new String[columns.length - 1];
+        System.arraycopy(columns, 0, others, 0, index);
+        System.arraycopy(columns, index + 1, others, index, others.length - index);
+        return others;
+    }
+
+    /**
+     * Returns the record schema with a nullable string field per column.
+     */
+    static Schema createSchema(String[] columns) {
+        Schema nullableString = Schema.createUnion(Arrays.asList(
+                Schema.create(Schema.Type.NULL), Schema.create(Schema.Type.STRING)));
+        String[] names = fieldNames(columns);
+        List<Schema.Field> fields = new ArrayList<Schema.Field>(names.length);
+        for (int i = 0; i < names.length; i++) {
+            String doc = names[i].equals(columns[i]) ? null : columns[i];
+            fields.add(new Schema.Field(names[i], nullableString, doc, NullNode.getInstance()));
+        }
+        Schema schema = Schema.createRecord(RECORD_NAME, null, RECORD_NAMESPACE, false);
+        schema.setFields(fields);
+        return schema;
+    }
+
+    /**
+     * Turns the column names into distinct Avro names: the characters other
+     * than letters, digits and underscores are replaced by an underscore, a
+     * name is prefixed by an underscore if it starts with a digit and suffixed
+     * by a number if it is already taken.
+     */
+    static String[] fieldNames(String[] columns) {
+        String[] names = new String[columns.length];
+        Set<String> taken = new HashSet<String>();
+        for (int i = 0; i < columns.length; i++) {
+            StringBuilder name = new StringBuilder(columns[i].length() + 1);
+            for (int j = 0; j < columns[i].length(); j++) {
+                char c = columns[i].charAt(j);
+                boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                        || (c >= '0' && c <= '9') || c == '_';
+                name.append(valid ? c : '_');
+            }
+            if (name.length() == 0 || (name.charAt(0) >= '0' && name.charAt(0) <= '9')) {
+                name.insert(0, '_');
+            }
+            String candidate = name.toString();
+            for (int n = 2; !taken.add(candidate); n++) {
+                candidate = name + "_" + n;
+            }
+            names[i] = candidate;
+        }
+        return names;
+    }
+
+    Schema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Container files have a header and sync markers, they cannot be appended
+     * to without reading the existing file.
+     */
+    public boolean supportsReopen() {
+        return false;
+    }
+
+    public void afterCreate() throws IOException {
+        dataFileWriter = new DataFileWriter<GenericRecord>(new GenericDatumWriter<GenericRecord>(schema));
+        dataFileWriter.setCodec(CodecFactory.fromString(compressionCodec));
+        dataFileWriter.setSyncInterval(syncIntervalBytes);
+        dataFileWriter.create(schema, out);
+    }
+
+    public void afterReopen() throws IOException {
+        throw new UnsupportedOperationException("Avro container files cannot be reopened for append");
+    }
+
+    public void write(Event e) throws IOException {
+        if (metrics == null) {
+            writeEvent(e);
+            return;
+        }
+        long start = metrics.startWrite();
+        writeEvent(e);
+        metrics.endWrite(start, e.getBody() == null ? 0 : e.getBody().length);
+    }
+
+    private void writeEvent(Event e) throws IOException {
+        Map<String, String> headers = e.getHeaders();
+        int missing = 0;
+        for (int i = 0; i < rowColumns.length; i++) {
+            String value = headers.get(rowColumns[i]);
+            if (value == null) {
+                missing++;
+            }
+            row[i] = value;
+        }
+
+        if (missing > 0 && bodyExtractor != null) {
+            try {
+                bodyExtractor.extract(e.getBody(), row);
+            } catch (Exception exp) {
+                logger.error("failed to get JSON from body with exception", exp);
+            }
+        }
+
+        // the row skips the body column, the fields after it are shifted by one
+        for (int i = 0; i < row.length; i++) {
+            record.put(bodyColumn >= 0 && i >= bodyColumn ? i + 1 : i, row[i]);
+        }
+        if (bodyColumn >= 0) {
+            // the body bytes are written as they are, without decoding them
+            record.put(bodyColumn, e.getBody() == null ? null : new Utf8(e.getBody()));
+        }
+        dataFileWriter.append(record);
+    }
+
+    /**
+     * Compresses and writes the pending records as a block.
+     */
+    public void flush() throws IOException {
+        dataFileWriter.flush();
+        if (metrics != null) {
+            metrics.flush();
+        }
+    }
+
+    public void beforeClose() throws IOException {
+        // the sink closes the output stream, closing the writer would close it
+        flush();
+    }
+
+    public static class Builder implements EventSerializer.Builder {
+
+        public EventSerializer build(Context context, OutputStream out) {
+            AvroColumnEventSerializer s = new AvroColumnEventSerializer(out, context);
+            return s;
+        }
+
+    }
+}
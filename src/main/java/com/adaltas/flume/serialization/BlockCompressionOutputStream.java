@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.adaltas.flume.serialization;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+
+import org.apache.flume.Context;
+import org.xerial.snappy.Snappy;
+
+/**
+ * Compresses the serializer output in blocks of "compression.blockSize"
+ * bytes. Every block is compressed on its own and written when it is full,
+ * when the stream is flushed and when it is finished, so a flush leaves only
+ * complete blocks in the output stream. Flushing or syncing the output stream
+ * itself is left to the sink.
+ * <p>
+ * A "gzip" block is a gzip member, the output is a multi-member gzip file.
+ * The "snappy" and "lz4" blocks use the framing of the Hadoop block codecs,
+ * the uncompressed length followed by the length and bytes of the compressed
+ * block, both lengths as big-endian ints. Blocks can be appended to an
+ * existing file in all the formats.
+ */
+abstract class BlockCompressionOutputStream extends OutputStream {
+
+    static final String COMPRESSION = "compression";
+    static final String COMPRESSION_DFLT = "none";
+    static final String BLOCK_SIZE = "compression.blockSize";
+    static final int BLOCK_SIZE_DFLT = 64 * 1024;
+
+    private final OutputStream out;
+    private final CompressionCounter counter;
+    private final byte[] block;
+    private int count;
+
+    BlockCompressionOutputStream(OutputStream out, int blockSize, CompressionCounter counter) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException(BLOCK_SIZE + " must be positive: " + blockSize);
+        }
+        this.out = out;
+        this.counter = counter;
+        this.block = new byte[blockSize];
+    }
+
+    /**
+     * Returns the compression stream configured by "compression" in front of
+     * the output stream, or null with "none".
+     */
+    static BlockCompressionOutputStream configure(OutputStream out, Context ctx) {
+        String codec = ctx.getString(COMPRESSION, COMPRESSION_DFLT).toLowerCase(Locale.ENGLISH);
+        int blockSize = ctx.getInteger(BLOCK_SIZE, BLOCK_SIZE_DFLT);
+        if (codec.equals("none")) {
+            return null;
+        } else if (codec.equals("gzip")) {
+            return new Gzip(out, blockSize, CompressionCounter.forCodec(codec));
+        } else if (codec.equals("snappy")) {
+            return new SnappyBlocks(out, blockSize, CompressionCounter.forCodec(codec));
+        } else if (codec.equals("lz4")) {
+            return new Lz4Blocks(out, blockSize, CompressionCounter.forCodec(codec));
+        }
+        throw new IllegalArgumentException("Unsupported " + COMPRESSION + ": " + codec
+                + ", expected none, gzip, snappy or lz4");
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        block[count++] = (byte) b;
+        if (count == block.length) {
+            flush();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == 0 && len >= block.length) {
+                // a whole block is compressed from the caller's array
+                compress(b, off, block.length);
+                off += block.length;
+                len -= block.length;
+                continue;
+            }
+            int n = Math.min(len, block.length - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == block.length) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Compresses and writes the pending bytes as a block, without flushing
+     * the output stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (count > 0) {
+            compress(block, 0, count);
+            count = 0;
+        }
+    }
+
+    /**
+     * Writes the last block and releases the compressor, the output stream
+     * is left open.
+     */
+    void finish() throws IOException {
+        try {
+            flush();
+        } finally {
+            end();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+
+    private void compress(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        int written = writeBlock(out, b, off, len);
+        counter.addBlock(len, written, System.nanoTime() - start);
+    }
+
+    /**
+     * Writes the bytes as a compressed block and returns the number of bytes
+     * written to the output stream.
+     */
+    abstract int writeBlock(OutputStream out, byte[] b, int off, int len) throws IOException;
+
+    void end() {
+        // noop
+    }
+
+    static void writeInt(OutputStream out, int v) throws IOException {
+        out.write(v >>> 24);
+        out.write(v >>> 16);
+        out.write(v >>> 8);
+        out.write(v);
+    }
+
+    private static final class Gzip extends BlockCompressionOutputStream {
+
+        private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private final CRC32 crc = new CRC32();
+        private final byte[] deflated = new byte[8 * 1024];
+
+        Gzip(OutputStream out, int blockSize, CompressionCounter counter) {
+            super(out, blockSize, counter);
+        }
+
+        @Override
+        int writeBlock(OutputStream out, byte[] b, int off, int len) throws IOException {
+            crc.reset();
+            crc.update(b, off, len);
+            deflater.reset();
+            deflater.setInput(b, off, len);
+            deflater.finish();
+
+            out.write(HEADER);
+            int written = HEADER.length;
+            while (!deflater.finished()) {
+                int n = deflater.deflate(deflated, 0, deflated.length);
+                out.write(deflated, 0, n);
+                written += n;
+            }
+            // the trailer ints are little-endian
+            int value = (int) crc.getValue();
+            for (int i = 0; i < 2; i++) {
+                out.write(value);
+                out.write(value >>> 8);
+                out.write(value >>> 16);
+                out.write(value >>> 24);
+                value = len;
+            }
+            return written + 8;
+        }
+
+        @Override
+        void end() {
+            deflater.end();
+        }
+    }
+
+    private static final class SnappyBlocks extends BlockCompressionOutputStream {
+
+        private final byte[] compressed;
+
+        SnappyBlocks(OutputStream out, int blockSize, CompressionCounter counter) {
+            super(out, blockSize, counter);
+            this.compressed = new byte[Snappy.maxCompressedLength(blockSize)];
+        }
+
+        @Override
+        int writeBlock(OutputStream out, byte[] b, int off, int len) throws IOException {
+            int n = Snappy.compress(b, off, len, compressed, 0);
+            writeInt(out, len);
+            writeInt(out, n);
+            out.write(compressed, 0, n);
+            return n + 8;
+        }
+    }
+
+    private static final class Lz4Blocks extends BlockCompressionOutputStream {
+
+        private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+        private final byte[] compressed;
+
+        Lz4Blocks(OutputStream out, int blockSize, CompressionCounter counter) {
+            super(out, blockSize, counter);
+            this.compressed = new byte[compressor.maxCompressedLength(blockSize)];
+        }
+
+        @Override
+        int writeBlock(OutputStream out, byte[] b, int off, int len) throws IOException {
+            int n = compressor.compress(b, off, len, compressed, 0, compressed.length);
+            writeInt(out, len);
+            writeInt(out, n);
+            out.write(compressed, 0, n);
+            return n + 8;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.adaltas.flume.serialization;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.flume.instrumentation.MonitoredCounterGroup;
+
+/**
+ * Counts the bytes compressed by the serializers of a codec. The serializers
+ * are created on every file roll, so a counter is shared by all the
+ * serializers using the same codec and registered as
+ * <tt>org.apache.flume.serializer:type=compression-&lt;codec&gt;</tt>.
+ */
+public class CompressionCounter extends MonitoredCounterGroup implements CompressionCounterMBean {
+
+    private static final String COUNTER_BYTES_IN = "serializer.compression.bytes.in";
+    private static final String COUNTER_BYTES_OUT = "serializer.compression.bytes.out";
+    private static final String COUNTER_BLOCK_COUNT = "serializer.compression.block.count";
+    private static final String COUNTER_TIME_NANOS = "serializer.compression.time.nanos";
+
+    private static final String[] ATTRIBUTES = {
+        COUNTER_BYTES_IN, COUNTER_BYTES_OUT, COUNTER_BLOCK_COUNT, COUNTER_TIME_NANOS
+    };
+
+    private static final ConcurrentMap<String, CompressionCounter> COUNTERS =
+            new ConcurrentHashMap<String, CompressionCounter>();
+
+    CompressionCounter(String name) {
+        super(MonitoredCounterGroup.Type.SERIALIZER, name, ATTRIBUTES);
+    }
+
+    /**
+     * Returns the started counter of the codec.
+     */
+    static CompressionCounter forCodec(String codec) {
+        CompressionCounter counter = COUNTERS.get(codec);
+        if (counter == null) {
+            CompressionCounter created = new CompressionCounter("compression-" + codec);
+            counter = COUNTERS.putIfAbsent(codec, created);
+            if (counter == null) {
+                counter = created;
+                counter.start();
+            }
+        }
+        return counter;
+    }
+
+    void addBlock(int bytesIn, int bytesOut, long nanos) {
+        addAndGet(COUNTER_BYTES_IN, bytesIn);
+        addAndGet(COUNTER_BYTES_OUT, bytesOut);
+        addAndGet(COUNTER_TIME_NANOS, nanos);
+        increment(COUNTER_BLOCK_COUNT);
+    }
+
+    public long getBytesIn() {
+        return get(COUNTER_BYTES_IN);
+    }
+
+    public long getBytesOut() {
+        return get(COUNTER_BYTES_OUT);
+    }
+
+    public long getBlockCount() {
+        return get(COUNTER_BLOCK_COUNT);
+    }
+
+    public long getCompressionTimeNanos() {
+        return get(COUNTER_TIME_NANOS);
+    }
+
+    /**
+     * Returns the uncompressed bytes per compressed byte.
+     */
+    public double getCompressionRatio() {
+        long bytesOut = getBytesOut();
+        return bytesOut == 0 ? 0 : (double) getBytesIn() / bytesOut;
+    }
+
+    /**
+     * Returns the uncompressed bytes compressed per second of compression.
+     */
+    public double getThroughputBytesPerSecond() {
+        long nanos = getCompressionTimeNanos();
+        return nanos == 0 ? 0 : getBytesIn() * 1e9 / nanos;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.adaltas.flume.serialization;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Writes CSV rows in UTF-8 straight into an {@link OutputBuffer}. The output
+ * is the one of the opencsv 2.3 <tt>CSVWriter</tt> previously used: every
+ * field is quoted, the quotes inside a field are doubled and rows end with
+ * "\n". Byte fields, such as the event body, are copied as they are unless
+ * they contain a quote.
+ */
+final class CsvEncoder {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte QUOTE = '"';
+
+    private final OutputBuffer buffer;
+    private final byte[] delimiter;
+    private boolean firstField = true;
+
+    CsvEncoder(OutputBuffer buffer, char delimiter) {
+        this.buffer = buffer;
+        this.delimiter = String.valueOf(delimiter).getBytes(UTF_8);
+    }
+
+    private void startField() throws IOException {
+        if (this.firstField) {
+            this.firstField = false;
+        } else {
+            this.buffer.write(this.delimiter, 0, this.delimiter.length);
+        }
+    }
+
+    /**
+     * Writes a field. Like opencsv, a null field is an empty unquoted field.
+     */
+    void writeField(String value) throws IOException {
+        startField();
+        if (value == null) {
+            return;
+        }
+        this.buffer.write(QUOTE);
+        int from = 0;
+        int quote;
+        while ((quote = value.indexOf(QUOTE, from)) >= 0) {
+            this.buffer.writeUtf8(value, from, quote + 1);
+            this.buffer.write(QUOTE);
+            from = quote + 1;
+        }
+        this.buffer.writeUtf8(value, from, value.length());
+        this.buffer.write(QUOTE);
+    }
+
+    /**
+     * Writes a field of UTF-8 bytes.
+     */
+    void writeField(byte[] value) throws IOException {
+        startField();
+        this.buffer.write(QUOTE);
+        int from = 0;
+        for (int i = 0; i < value.length; i++) {
+            if (value[i] == QUOTE) {
+                this.buffer.write(value, from, i + 1 - from);
+                this.buffer.write(QUOTE);
+                from = i + 1;
+            }
+        }
+        this.buffer.write(value, from, value.length - from);
+        this.buffer.write(QUOTE);
+    }
+
+    void endRow() throws IOException {
+        this.buffer.write('\n');
+        this.firstField = true;
+    }
+}
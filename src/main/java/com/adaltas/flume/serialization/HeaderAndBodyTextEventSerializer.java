@@ -20,8 +20,6 @@ package com.adaltas.flume.serialization;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.UnsupportedEncodingException;
 import java.util.*;
 
 import com.google.gson.Gson;
@@ -29,19 +27,26 @@ import com.google.gson.GsonBuilder;
 import org.apache.flume.Context;
 import org.apache.flume.Event;
 import org.apache.flume.serialization.EventSerializer;
-import org.codehaus.jackson.map.ObjectMapper;
-import org.codehaus.jackson.type.TypeReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import au.com.bytecode.opencsv.CSVWriter;
-
 /**
  * This class simply writes the header properties and body of the event to the output stream
  * and appends a newline after each event. The "columns" configuration allows
  * to list and order the columns to write. The "format" configuration accept "NATIVE"
- * and "CSV". In the case of the "CSV" serialization, the fields are space delimited
- * and the implementation is extremely simple without any escaping.
+ * and "CSV". In the case of the "CSV" serialization, the fields are delimited by
+ * "delimiter", quoted, and the quotes they contain are doubled.
+ * With "jsonBody", the columns which are not headers are read from the JSON
+ * body, the body itself is not written in CSV. A column is a top level field
+ * or a path like "Data[0].Properties.CPU.Value" or "Data[*].SampleDate". With
+ * "explode", the CSV format writes a row per element of the array iterated by
+ * the "[*]" columns.
+ * The output is buffered, up to "bufferSize" bytes, and written to the
+ * output stream when the buffer is full, on flush and before close.
+ * With "compression" set to "gzip", "snappy" or "lz4", the output is
+ * compressed in blocks of "compression.blockSize" bytes.
+ * The events, bytes and write latency are recorded by {@link SerializerMetrics}
+ * as "serializer.text.*" unless "metrics.enabled" is false.
  */
 public class HeaderAndBodyTextEventSerializer implements EventSerializer {
 
@@ -56,16 +61,30 @@ public class HeaderAndBodyTextEventSerializer implements EventSerializer {
     private final char DELIMITER_DFLT = '\t';
     private final String JSON_BODY = "jsonBody";
     private final boolean JSON_BODY_DFLT = false;
+    private final String EXPLODE = "explode";
+    private final boolean EXPLODE_DFLT = false;
+    private final String BUFFER_SIZE = "bufferSize";
+    private final int BUFFER_SIZE_DFLT = 64 * 1024;
 
     private final OutputStream out;
-    private CSVWriter csvWriter;
+    private final BlockCompressionOutputStream compression;
+    private final SerializerMetrics metrics;
+    private final OutputBuffer buffer;
+    private final CsvEncoder csvEncoder;
     private final boolean appendNewline;
     private final String columns;
     private final String format;
     private final char delimiter;
     private final Gson gson;
     private final boolean jsonBody;
-    private ObjectMapper objectMapper;
+    private final JsonBodyExtractor bodyExtractor;
+
+    // column plan compiled from "columns", null when all the headers are written
+    private final String[] columnNames;
+    // reusable row of the column values
+    private final String[] row;
+    private final boolean nativeFormat;
+    private final boolean csvFormat;
 
     private final static Logger logger = LoggerFactory.getLogger(HeaderAndBodyTextEventSerializer.class);
 
@@ -79,6 +98,8 @@ public class HeaderAndBodyTextEventSerializer implements EventSerializer {
         }
 
         this.format = ctx.getString(FORMAT, FORMAT_DFLT);
+        this.nativeFormat = this.format.equals("NATIVE");
+        this.csvFormat = this.format.equals("CSV");
 
         String strDelimiter = ctx.getString(DELIMITER);
         if (strDelimiter != null && strDelimiter.length() > 0) {
@@ -88,12 +109,40 @@ public class HeaderAndBodyTextEventSerializer implements EventSerializer {
         }
 
         this.out = out;
+        this.metrics = SerializerMetrics.configure("text", ctx);
+        OutputStream sink = this.metrics == null ? out : this.metrics.countBytesOut(out);
+        this.compression = BlockCompressionOutputStream.configure(sink, ctx);
+        this.buffer = new OutputBuffer(this.compression == null ? sink : this.compression,
+                ctx.getInteger(BUFFER_SIZE, BUFFER_SIZE_DFLT));
+        this.csvEncoder = new CsvEncoder(this.buffer, this.delimiter);
         this.gson = new GsonBuilder().disableHtmlEscaping().create();
         this.jsonBody = ctx.getBoolean(JSON_BODY, JSON_BODY_DFLT);
-        if (this.jsonBody) {
-            this.objectMapper = new ObjectMapper();
-        }
         logger.debug("JSON Body flag is {}", this.jsonBody);
+
+        this.columnNames = compileColumns(this.columns);
+        boolean explode = ctx.getBoolean(EXPLODE, EXPLODE_DFLT);
+        if (explode && !(this.csvFormat && this.jsonBody && this.columnNames != null)) {
+            logger.warn("explode only applies to the CSV format with columns and jsonBody");
+        }
+        this.bodyExtractor = this.jsonBody && this.columnNames != null
+                ? new JsonBodyExtractor(this.columnNames, explode && this.csvFormat) : null;
+        this.row = this.columnNames == null ? null : new String[this.columnNames.length];
+    }
+
+    /**
+     * Returns the distinct column names in the order of their first occurrence,
+     * or null if no columns are configured.
+     */
+    static String[] compileColumns(String columns) {
+        if (columns == null) {
+            return null;
+        }
+        Set<String> names = new LinkedHashSet<String>();
+        StringTokenizer tok = new StringTokenizer(columns);
+        while (tok.hasMoreTokens()) {
+            names.add(tok.nextToken());
+        }
+        return names.toArray(new String[names.size()]);
     }
 
     public boolean supportsReopen() {
@@ -108,102 +157,163 @@ public class HeaderAndBodyTextEventSerializer implements EventSerializer {
         // noop
     }
 
-    public void beforeClose() {
-        // noop
+    public void beforeClose() throws IOException {
+        flush();
+        buffer.release();
+        if (compression != null) {
+            compression.finish();
+        }
+        if (metrics != null) {
+            metrics.flush();
+        }
     }
 
     public void write(Event e) throws IOException {
+        if (metrics == null) {
+            writeEvent(e);
+            return;
+        }
+        long start = metrics.startWrite();
+        writeEvent(e);
+        metrics.endWrite(start, e.getBody() == null ? 0 : e.getBody().length);
+    }
+
+    private void writeEvent(Event e) throws IOException {
         Map<String, String> originalHeaders = e.getHeaders();
-        Map<String, String> headers = new LinkedHashMap<String, String>();
 
-        Map<String, String> bodys = new LinkedHashMap<String, String>();
+        if (this.columnNames == null) {
+            if (this.nativeFormat) {
+                handleNativeFormat(originalHeaders, e);
+            } else if (this.csvFormat) {
+                handleCsvFormat(originalHeaders, e);
+            }
+            return;
+        }
 
         // columns limits which headers are serialized
-        if (this.columns != null) {
+        int missing = 0;
+        for (int i = 0; i < this.columnNames.length; i++) {
+            String value = originalHeaders.get(this.columnNames[i]);
+            if (value == null) {
+                missing++;
+            }
+            this.row[i] = value;
+        }
 
+        // the JSON body is only read for the columns which are not headers
+        int explodedRows = 0;
+        if (missing > 0 && this.bodyExtractor != null) {
             try {
-                bodys = objectMapper.readValue(getBodyString(e), new TypeReference<Map<String, String>>(){});
-
+                explodedRows = this.bodyExtractor.extract(e.getBody(), this.row);
             } catch (Exception exp) {
                 logger.error("failed to get JSON from body with exception", exp);
             }
+        }
 
-            StringTokenizer tok = new StringTokenizer(this.columns);
-            while (tok.hasMoreTokens()) {
-                String key = tok.nextToken();
-
-                try {
-                    String value = originalHeaders.get(key);
-                    if (value == null && this.jsonBody) {
-                        value = bodys.get(key);
-                    }
-                    headers.put(key, value);
-                } catch (Exception expt) {
-                    logger.error("Even Parse ERROR " + "Key: " + key, expt);
-                }
+        if (explodedRows > 0) {
+            for (int k = 0; k < explodedRows; k++) {
+                handleCsvFormat(this.bodyExtractor.explodedRow(k), e);
             }
-        } else {
-            // If json, we need a copy since we'll add the body
-            headers.putAll(originalHeaders);
-            if (this.jsonBody) {
-                headers.putAll(bodys);
+        } else if (this.nativeFormat) {
+            handleNativeFormat(this.row, e);
+        } else if (this.csvFormat) {
+            handleCsvFormat(this.row, e);
+        }
+    }
+
+    /**
+     * Writes the headers like their {@link Map#toString()}, followed by a space.
+     */
+    protected void handleNativeFormat(Map<String, String> headers, Event event) throws IOException {
+        buffer.write('{');
+        boolean first = true;
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            if (!first) {
+                buffer.write(',');
+                buffer.write(' ');
             }
+            first = false;
+            writeNativeHeader(entry.getKey(), entry.getValue());
         }
+        buffer.write('}');
+        buffer.write(' ');
+        writeBody(event);
+    }
 
-        if (this.format.equals("NATIVE")) {
-            handleNativeFormat(headers, e);
-        } else if (this.format.equals("CSV")) {
-            handleCsvFormat(headers, e);
+    /**
+     * Writes the column values like the {@link Map#toString()} of the headers.
+     */
+    protected void handleNativeFormat(String[] values, Event event) throws IOException {
+        buffer.write('{');
+        for (int i = 0; i < this.columnNames.length; i++) {
+            if (i > 0) {
+                buffer.write(',');
+                buffer.write(' ');
+            }
+            writeNativeHeader(this.columnNames[i], values[i]);
         }
+        buffer.write('}');
+        buffer.write(' ');
+        writeBody(event);
     }
 
-    protected void handleNativeFormat(Map<String, String> headers, Event event) throws IOException {
-        out.write((headers + " ").getBytes());
-        out.write(event.getBody());
+    private void writeNativeHeader(String key, String value) throws IOException {
+        writeNativeString(key);
+        buffer.write('=');
+        writeNativeString(value);
+    }
+
+    private void writeNativeString(String value) throws IOException {
+        if (value == null) {
+            value = "null";
+        }
+        buffer.writeUtf8(value, 0, value.length());
+    }
+
+    private void writeBody(Event event) throws IOException {
+        buffer.write(event.getBody());
 
         if (appendNewline) {
-            out.write('\n');
+            buffer.write('\n');
         }
     }
 
     protected void handleCsvFormat(Map<String, String> headers, Event event) throws IOException {
-        if (csvWriter == null) {
-            logger.debug("Creating new csvWriter");
-            csvWriter = new CSVWriter(new OutputStreamWriter(out), this.delimiter);
+        for (String value : headers.values()) {
+            csvEncoder.writeField(value == null ? "" : value);
         }
+        writeCsvBody(event);
+    }
 
-        ArrayList<String> values = new ArrayList<String>();
-        for (Map.Entry<String, String> entry : headers.entrySet()) {
-            if (entry.getValue() == null) {
-                values.add("");
-            } else {
-                values.add(entry.getValue().toString());
-            }
+    /**
+     * Writes the values, followed by the body unless it is a JSON body.
+     */
+    protected void handleCsvFormat(String[] values, Event event) throws IOException {
+        for (String value : values) {
+            csvEncoder.writeField(value == null ? "" : value);
         }
+        writeCsvBody(event);
+    }
 
+    private void writeCsvBody(Event event) throws IOException {
         if (!this.jsonBody) {
-            values.add(getBodyString(event));
-            logger.debug("Writing event with body: " + event.getBody());
+            csvEncoder.writeField(event.getBody() == null ? new byte[0] : event.getBody());
         }
-
-        csvWriter.writeNext(values.toArray(new String[values.size()]));
-        csvWriter.flush();
+        csvEncoder.endRow();
     }
 
+    /**
+     * Writes the buffered events to the output stream, compressed as complete
+     * blocks, the sink flushes or syncs the stream itself.
+     */
     public void flush() throws IOException {
-        // noop
-    }
-
-    private String getBodyString(Event event) {
-        try {
-            if (event.getBody() != null) {
-                logger.debug("body = " + event.getBody().toString());
-                return new String(event.getBody(), "UTF-8");
-            }
-        } catch (UnsupportedEncodingException exp) {
-            logger.error("failed to encode the body with UTF-8");
+        buffer.flush();
+        if (compression != null) {
+            compression.flush();
+        }
+        if (metrics != null) {
+            metrics.flush();
         }
-        return "";
     }
 
     public static class Builder implements EventSerializer.Builder {
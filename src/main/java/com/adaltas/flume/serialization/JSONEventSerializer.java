@@ -20,9 +20,11 @@ package com.adaltas.flume.serialization;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.nio.charset.Charset;
+import java.util.LinkedHashSet;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
 
 import org.apache.flume.Context;
@@ -39,7 +41,22 @@ import com.google.gson.Gson;
  * allows to list and order the columns to write. It must contains the name of 
  * the body key if you wish to write the event body. The "body" configuration 
  * is the name of the key associated to the event body.
- * 
+ * <p>
+ * Without columns, the body is written first, then the headers; a header with
+ * the name of the body key replaces the body. Null values are not written.
+ * The JSON is escaped and encoded in UTF-8 straight into a buffer of
+ * "bufferSize" bytes, written to the output stream when it is full, on flush
+ * and before close. With "compression" set to "gzip", "snappy" or "lz4", the
+ * output is compressed in blocks of "compression.blockSize" bytes.
+ * <p>
+ * The "bodyFormat" configuration sets how the body is written: "string" (the
+ * default) as an escaped string, "object" as a nested object when the body is
+ * a JSON object, or "merge" to write the top level fields of a JSON object
+ * body in place of the body key, the headers replacing the fields of the same
+ * name. A body which is not a valid JSON object is written as a string.
+ * <p>
+ * The events, bytes and write latency are recorded by {@link SerializerMetrics}
+ * as "serializer.json.*" unless "metrics.enabled" is false.
  */
 public class JSONEventSerializer implements EventSerializer {
 
@@ -53,19 +70,82 @@ public class JSONEventSerializer implements EventSerializer {
   private final String COLUMNS_DFLT = null;
   private final String BODY = "body";
   private final String BODY_DFLT = "body";
+  private final String BUFFER_SIZE = "bufferSize";
+  private final int BUFFER_SIZE_DFLT = 64 * 1024;
+  private final String BODY_FORMAT = "bodyFormat";
+  private final String BODY_FORMAT_DFLT = "string";
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  enum BodyFormat {
+    STRING, OBJECT, MERGE
+  }
 
   private final OutputStream out;
+  private final BlockCompressionOutputStream compression;
+  private final SerializerMetrics metrics;
   private final boolean appendNewline;
   private final String columns;
   private final String body;
-  private final Gson gson;
+  private final OutputBuffer buffer;
+  private final JsonEncoder json;
+  private final BodyFormat bodyFormat;
+  private final JsonObjectScanner scanner = new JsonObjectScanner();
+  private final Gson gson = new Gson();
+
+  // column plan compiled from "columns", null when all the headers are written
+  private final String[] columnNames;
+  // the quoted column names followed by ':'
+  private final byte[][] columnKeys;
+  private final boolean[] bodyColumns;
+  private final byte[] bodyKey;
 
   private JSONEventSerializer(OutputStream out, Context ctx) {
     this.appendNewline = ctx.getBoolean(APPEND_NEWLINE, APPEND_NEWLINE_DFLT);
     this.columns = ctx.getString(COLUMNS, COLUMNS_DFLT);
     this.body = ctx.getString(BODY, BODY_DFLT);
     this.out = out;
-    this.gson = new Gson();
+    this.metrics = SerializerMetrics.configure("json", ctx);
+    OutputStream sink = this.metrics == null ? out : this.metrics.countBytesOut(out);
+    this.compression = BlockCompressionOutputStream.configure(sink, ctx);
+    this.buffer = new OutputBuffer(this.compression == null ? sink : this.compression,
+        ctx.getInteger(BUFFER_SIZE, BUFFER_SIZE_DFLT));
+    this.json = new JsonEncoder(this.buffer);
+    this.bodyKey = key(this.body);
+    String format = ctx.getString(BODY_FORMAT, BODY_FORMAT_DFLT).trim();
+    try {
+      this.bodyFormat = BodyFormat.valueOf(format.toUpperCase(Locale.ENGLISH));
+    } catch (IllegalArgumentException ex) {
+      throw new IllegalArgumentException("Unknown bodyFormat " + format + ", expected string, object or merge");
+    }
+
+    if (this.columns != null) {
+      Set<String> names = new LinkedHashSet<String>();
+      StringTokenizer tok = new StringTokenizer(this.columns);
+      while (tok.hasMoreTokens()) {
+        names.add(tok.nextToken());
+      }
+      this.columnNames = names.toArray(new String[names.size()]);
+      this.columnKeys = new byte[this.columnNames.length][];
+      this.bodyColumns = new boolean[this.columnNames.length];
+      for (int i = 0; i < this.columnNames.length; i++) {
+        this.columnKeys[i] = key(this.columnNames[i]);
+        this.bodyColumns[i] = this.columnNames[i].equals(this.body);
+      }
+      logger.debug("Serializing event with columns: " + this.columns);
+    } else {
+      this.columnNames = null;
+      this.columnKeys = null;
+      this.bodyColumns = null;
+    }
+  }
+
+  private static byte[] key(String name) {
+    byte[] quoted = JsonEncoder.encode(name);
+    byte[] key = new byte[quoted.length + 1];
+    System.arraycopy(quoted, 0, key, 0, quoted.length);
+    key[quoted.length] = ':';
+    return key;
   }
 
   public boolean supportsReopen() {
@@ -80,42 +160,178 @@ public class JSONEventSerializer implements EventSerializer {
     // noop
   }
 
-  public void beforeClose() {
-    // noop
+  public void beforeClose() throws IOException {
+    flush();
+    buffer.release();
+    if (compression != null) {
+      compression.finish();
+    }
+    if (metrics != null) {
+      metrics.flush();
+    }
   }
 
   public void write(Event e) throws IOException {
-		Map<String,String> headers = e.getHeaders();
-		Map<String,String> event;
-		if(this.columns != null){
-			event = new LinkedHashMap<String,String>();
-			StringTokenizer tok = new StringTokenizer(this.columns);
-			while(tok.hasMoreTokens()){
-				String key = tok.nextToken();
-				if(key.equals(this.body)){
-					event.put(key, new String(e.getBody()));
-				}else{
-					event.put(key, headers.get(key));
-				}
-			}
-		}else{
-			// Copy since we'll add the body
-			event = new HashMap<String,String>(headers);
-			event.put(this.body, new String(e.getBody()));
-
-			for(Map.Entry<String, String> entry: headers.entrySet()){
-			    event.put(entry.getKey(), entry.getValue());
-            }
-		}
-
-    out.write(gson.toJson(event).getBytes());
+    if (metrics == null) {
+      writeEvent(e);
+      return;
+    }
+    long start = metrics.startWrite();
+    writeEvent(e);
+    metrics.endWrite(start, e.getBody() == null ? 0 : e.getBody().length);
+  }
+
+  private void writeEvent(Event e) throws IOException {
+    Map<String, String> headers = e.getHeaders();
+    boolean first = true;
+    json.writeRaw('{');
+    if (this.columnNames != null) {
+      for (int i = 0; i < this.columnNames.length; i++) {
+        if (this.bodyColumns[i]) {
+          if (this.bodyFormat == BodyFormat.MERGE && scanner.scan(body(e))) {
+            first = writeMembers(first, e, headers, true);
+          } else {
+            first = writeBody(first, this.columnKeys[i], e);
+          }
+        } else {
+          String value = headers.get(this.columnNames[i]);
+          if (value != null) {
+            first = separate(first);
+            json.writeRaw(this.columnKeys[i]);
+            json.writeString(value);
+          }
+        }
+      }
+    } else {
+      if (this.bodyFormat == BodyFormat.MERGE && scanner.scan(body(e))) {
+        first = writeMembers(first, e, headers, false);
+      } else if (!headers.containsKey(this.body)) {
+        first = writeBody(first, this.bodyKey, e);
+      }
+      for (Map.Entry<String, String> entry : headers.entrySet()) {
+        if (entry.getValue() != null) {
+          first = separate(first);
+          json.writeString(entry.getKey());
+          json.writeRaw(':');
+          json.writeString(entry.getValue());
+        }
+      }
+    }
+    json.writeRaw('}');
     if (appendNewline) {
-      out.write('\n');
+      json.writeRaw('\n');
     }
   }
 
+  private boolean separate(boolean first) throws IOException {
+    if (!first) {
+      json.writeRaw(',');
+    }
+    return false;
+  }
+
+  private static byte[] body(Event e) {
+    return e.getBody() == null ? new byte[0] : e.getBody();
+  }
+
+  private boolean writeBody(boolean first, byte[] key, Event e) throws IOException {
+    first = separate(first);
+    json.writeRaw(key);
+    byte[] body = body(e);
+    if (this.bodyFormat == BodyFormat.OBJECT && scanner.scan(body)) {
+      writeJson(body, scanner.getObjectStart(), scanner.getObjectEnd());
+    } else {
+      json.writeString(body);
+    }
+    return first;
+  }
+
+  /**
+   * Writes the top level members of the scanned body, except the members
+   * replaced by a header.
+   */
+  private boolean writeMembers(boolean first, Event e, Map<String, String> headers, boolean columnsOnly)
+      throws IOException {
+    byte[] body = body(e);
+    for (int m = 0; m < scanner.getMemberCount(); m++) {
+      if (isHeader(body, m, headers, columnsOnly)) {
+        continue;
+      }
+      first = separate(first);
+      writeJson(body, scanner.getKeyStart(m), scanner.getValueEnd(m));
+    }
+    return first;
+  }
+
+  /**
+   * Returns true if a header with the key of the member is written.
+   */
+  private boolean isHeader(byte[] body, int member, Map<String, String> headers, boolean columnsOnly) {
+    if (columnsOnly) {
+      for (int i = 0; i < this.columnNames.length; i++) {
+        if (!this.bodyColumns[i] && headers.get(this.columnNames[i]) != null
+            && keyEquals(body, member, this.columnNames[i])) {
+          return true;
+        }
+      }
+      return false;
+    }
+    for (Map.Entry<String, String> entry : headers.entrySet()) {
+      if (entry.getValue() != null && keyEquals(body, member, entry.getKey())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean keyEquals(byte[] body, int member, String name) {
+    int from = scanner.getKeyStart(member) + 1;
+    int to = scanner.getKeyEnd(member) - 1;
+    for (int i = from; i < to; i++) {
+      if (body[i] < 0 || body[i] == '\\') {
+        // escaped or non ASCII key, compare it decoded
+        String key = gson.fromJson(new String(body, from - 1, to - from + 2, UTF_8), String.class);
+        return name.equals(key);
+      }
+    }
+    if (to - from != name.length()) {
+      return false;
+    }
+    for (int i = from; i < to; i++) {
+      if (body[i] != name.charAt(i - from)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Copies JSON bytes, without the line breaks which can only be whitespace
+   * in valid JSON, to keep one event per line.
+   */
+  private void writeJson(byte[] bytes, int from, int to) throws IOException {
+    int start = from;
+    for (int i = from; i < to; i++) {
+      if (bytes[i] == '\n' || bytes[i] == '\r') {
+        buffer.write(bytes, start, i - start);
+        start = i + 1;
+      }
+    }
+    buffer.write(bytes, start, to - start);
+  }
+
+  /**
+   * Writes the buffered events to the output stream, compressed as complete
+   * blocks, the sink flushes or syncs the stream itself.
+   */
   public void flush() throws IOException {
-    // noop
+    buffer.flush();
+    if (compression != null) {
+      compression.flush();
+    }
+    if (metrics != null) {
+      metrics.flush();
+    }
   }
 
   public static class Builder implements EventSerializer.Builder {
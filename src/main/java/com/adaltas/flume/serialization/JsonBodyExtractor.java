@@ -0,0 +1,359 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.adaltas.flume.serialization;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+/**
+ * Reads the column values missing from the headers out of a JSON body.
+ * <p>
+ * A column is either the name of a top level field or a path such as
+ * <tt>Data[0].Properties.CPU.Value</tt> or <tt>Data[*].SampleDate</tt>, made
+ * of field names, array indexes and <tt>[*]</tt> wildcards. The paths are
+ * compiled once into a tree and the body bytes are scanned in a single pass
+ * with a streaming parser which skips the fields no column refers to. When no
+ * column has a wildcard, the scan stops as soon as every missing column is
+ * found. Scalar values are converted to their text, nested objects and arrays
+ * are not column values.
+ * <p>
+ * The values matched by a wildcard column are joined with a comma. With
+ * <tt>explode</tt>, the wildcard columns must iterate the same array instead
+ * and every element of this array becomes its own row.
+ */
+final class JsonBodyExtractor {
+
+    private static final Object ANY_INDEX = new Object();
+
+    /**
+     * A step of the compiled paths. The values of the node are read into the
+     * columns, its children are the next steps.
+     */
+    private static final class Node {
+        int[] columns = new int[0];
+        final Map<String, Node> fields = new HashMap<String, Node>();
+        final Map<Integer, Node> indexes = new HashMap<Integer, Node>();
+        Node anyIndex;
+        boolean explodeArray;
+
+        void addColumn(int column) {
+            columns = Arrays.copyOf(columns, columns.length + 1);
+            columns[columns.length - 1] = column;
+        }
+
+        boolean hasChildren() {
+            return !fields.isEmpty() || !indexes.isEmpty() || anyIndex != null;
+        }
+
+        /**
+         * Adds the columns and the children of the other node to this node.
+         */
+        void merge(Node other) {
+            explodeArray |= other.explodeArray;
+            for (int column : other.columns) {
+                addColumn(column);
+            }
+            for (Map.Entry<String, Node> entry : other.fields.entrySet()) {
+                child(fields, entry.getKey()).merge(entry.getValue());
+            }
+            for (Map.Entry<Integer, Node> entry : other.indexes.entrySet()) {
+                child(indexes, entry.getKey()).merge(entry.getValue());
+            }
+            if (other.anyIndex != null) {
+                if (anyIndex == null) {
+                    anyIndex = new Node();
+                }
+                anyIndex.merge(other.anyIndex);
+            }
+        }
+
+        /**
+         * Lets the explicit indexes also match the paths of the wildcard, so
+         * that the scan follows a single node per value.
+         */
+        void mergeWildcards() {
+            for (Node node : fields.values()) {
+                node.mergeWildcards();
+            }
+            if (anyIndex != null) {
+                anyIndex.mergeWildcards();
+                for (Node node : indexes.values()) {
+                    node.merge(anyIndex);
+                }
+            }
+            for (Node node : indexes.values()) {
+                node.mergeWildcards();
+            }
+        }
+
+        private static <K> Node child(Map<K, Node> children, K key) {
+            Node node = children.get(key);
+            if (node == null) {
+                node = new Node();
+                children.put(key, node);
+            }
+            return node;
+        }
+    }
+
+    private final JsonFactory factory = new JsonFactory();
+    private final Node root = new Node();
+    private final boolean[] wildcard;
+    private final boolean hasWildcard;
+    private final boolean explode;
+    // true for the columns set by the headers or already read from the body
+    private final boolean[] done;
+    private final List<String[]> explodedRows = new ArrayList<String[]>();
+    private int explodedCount;
+    private int remaining;
+
+    JsonBodyExtractor(String[] columnNames) {
+        this(columnNames, false);
+    }
+
+    JsonBodyExtractor(String[] columnNames, boolean explode) {
+        this.wildcard = new boolean[columnNames.length];
+        this.done = new boolean[columnNames.length];
+        String explodePrefix = null;
+        boolean exploding = false;
+        for (int i = 0; i < columnNames.length; i++) {
+            List<Object> steps = parse(columnNames[i]);
+            Node node = this.root;
+            for (int j = 0; j < steps.size(); j++) {
+                Object step = steps.get(j);
+                if (step == ANY_INDEX) {
+                    if (!this.wildcard[i] && explode) {
+                        String prefix = steps.subList(0, j).toString();
+                        if (explodePrefix != null && !explodePrefix.equals(prefix)) {
+                            throw new IllegalArgumentException("Exploded columns must iterate the same array: "
+                                    + columnNames[i]);
+                        }
+                        explodePrefix = prefix;
+                        node.explodeArray = true;
+                        exploding = true;
+                    }
+                    this.wildcard[i] = true;
+                    if (node.anyIndex == null) {
+                        node.anyIndex = new Node();
+                    }
+                    node = node.anyIndex;
+                } else if (step instanceof Integer) {
+                    node = Node.child(node.indexes, (Integer) step);
+                } else {
+                    node = Node.child(node.fields, (String) step);
+                }
+            }
+            node.addColumn(i);
+        }
+        this.root.mergeWildcards();
+        boolean anyWildcard = false;
+        for (boolean w : this.wildcard) {
+            anyWildcard |= w;
+        }
+        this.hasWildcard = anyWildcard;
+        this.explode = exploding;
+    }
+
+    /**
+     * Compiles a column name into its steps: field names, array indexes and
+     * wildcards. A name without <tt>.</tt> nor <tt>[</tt> is a single field.
+     */
+    static List<Object> parse(String column) {
+        List<Object> steps = new ArrayList<Object>();
+        if (column.indexOf('.') < 0 && column.indexOf('[') < 0) {
+            steps.add(column);
+            return steps;
+        }
+        String path = column.startsWith("$.") ? column.substring(2) : column;
+        int i = 0;
+        int length = path.length();
+        while (i < length) {
+            char c = path.charAt(i);
+            if (c == '[') {
+                int end = path.indexOf(']', i);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unclosed [ in column " + column);
+                }
+                String index = path.substring(i + 1, end).trim();
+                if (index.equals("*")) {
+                    steps.add(ANY_INDEX);
+                } else if (index.length() > 1 && (index.charAt(0) == '\'' || index.charAt(0) == '"')
+                        && index.charAt(index.length() - 1) == index.charAt(0)) {
+                    steps.add(index.substring(1, index.length() - 1));
+                } else {
+                    try {
+                        steps.add(Integer.valueOf(index));
+                    } catch (NumberFormatException ex) {
+                        throw new IllegalArgumentException("Invalid index [" + index + "] in column " + column);
+                    }
+                }
+                i = end + 1;
+                if (i < length && path.charAt(i) == '.') {
+                    i++;
+                    if (i == length) {
+                        throw new IllegalArgumentException("Empty field name in column " + column);
+                    }
+                }
+            } else {
+                int end = i;
+                while (end < length && path.charAt(end) != '.' && path.charAt(end) != '[') {
+                    end++;
+                }
+                if (end == i) {
+                    throw new IllegalArgumentException("Empty field name in column " + column);
+                }
+                steps.add(path.substring(i, end));
+                i = end;
+                if (i < length && path.charAt(i) == '.') {
+                    i++;
+                    if (i == length) {
+                        throw new IllegalArgumentException("Empty field name in column " + column);
+                    }
+                }
+            }
+        }
+        return steps;
+    }
+
+    /**
+     * Sets the null values of the row from the body.
+     *
+     * @param body the JSON object
+     * @param row the column values, in the order of the column names
+     * @return the number of exploded rows, 0 when the row is the only row
+     */
+    int extract(byte[] body, String[] row) throws IOException {
+        this.remaining = 0;
+        for (int i = 0; i < this.done.length; i++) {
+            this.done[i] = row[i] != null;
+            if (!this.done[i] && !this.wildcard[i]) {
+                this.remaining++;
+            }
+        }
+        this.explodedCount = 0;
+        JsonParser parser = this.factory.createJsonParser(body);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("JSON body is not an object");
+            }
+            walk(parser, JsonToken.START_OBJECT, this.root, row, -1);
+        } finally {
+            parser.close();
+        }
+        for (int k = 0; k < this.explodedCount; k++) {
+            String[] exploded = this.explodedRows.get(k);
+            for (int i = 0; i < row.length; i++) {
+                if (!this.wildcard[i] || this.done[i]) {
+                    exploded[i] = row[i];
+                }
+            }
+        }
+        return this.explodedCount;
+    }
+
+    /**
+     * Returns the k-th exploded row of the last extraction.
+     */
+    String[] explodedRow(int k) {
+        return this.explodedRows.get(k);
+    }
+
+    /**
+     * Reads the value at the current token. Returns true once every column
+     * without wildcard is found and the scan can stop.
+     */
+    private boolean walk(JsonParser parser, JsonToken token, Node node, String[] row, int element)
+            throws IOException {
+        if (token != JsonToken.START_OBJECT && token != JsonToken.START_ARRAY) {
+            for (int column : node.columns) {
+                if (record(column, token == JsonToken.VALUE_NULL ? null : parser.getText(), row, element)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (token == JsonToken.START_OBJECT && !node.fields.isEmpty()) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                Node child = node.fields.get(parser.getCurrentName());
+                JsonToken value = parser.nextToken();
+                if (child == null) {
+                    parser.skipChildren();
+                } else if (walk(parser, value, child, row, element)) {
+                    return true;
+                }
+            }
+        } else if (token == JsonToken.START_ARRAY && (node.anyIndex != null || !node.indexes.isEmpty())) {
+            int index = 0;
+            JsonToken value;
+            while ((value = parser.nextToken()) != JsonToken.END_ARRAY && value != null) {
+                Node child = node.indexes.get(index);
+                if (child == null) {
+                    child = node.anyIndex;
+                }
+                int childElement = element;
+                if (node.explodeArray && this.explode) {
+                    childElement = index;
+                    startExplodedRow(index, row.length);
+                }
+                if (child == null) {
+                    parser.skipChildren();
+                } else if (walk(parser, value, child, row, childElement)) {
+                    return true;
+                }
+                index++;
+            }
+        } else {
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    private void startExplodedRow(int k, int columns) {
+        if (k == this.explodedRows.size()) {
+            this.explodedRows.add(new String[columns]);
+        }
+        Arrays.fill(this.explodedRows.get(k), null);
+        this.explodedCount = k + 1;
+    }
+
+    private boolean record(int column, String value, String[] row, int element) {
+        if (this.done[column]) {
+            return false;
+        }
+        if (!this.wildcard[column]) {
+            row[column] = value;
+            this.done[column] = true;
+            return --this.remaining == 0 && !this.hasWildcard;
+        }
+        if (value == null) {
+            return false;
+        }
+        String[] target = this.explode && element >= 0 ? this.explodedRows.get(element) : row;
+        target[column] = target[column] == null ? value : target[column] + "," + value;
+        return false;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.adaltas.flume.serialization;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Writes JSON strings in UTF-8 straight into an {@link OutputBuffer}. The
+ * escaping is the one of the default <tt>Gson</tt> previously used: quotes,
+ * backslashes and control characters are escaped, and so are the HTML
+ * characters <tt>&lt; &gt; &amp; = '</tt> and the line separators U+2028
+ * and U+2029.
+ */
+final class JsonEncoder {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final byte[][] REPLACEMENTS = new byte[128][];
+
+  static {
+    for (int i = 0; i < 0x20; i++) {
+      REPLACEMENTS[i] = String.format("\\u%04x", i).getBytes(UTF_8);
+    }
+    REPLACEMENTS['"'] = "\\\"".getBytes(UTF_8);
+    REPLACEMENTS['\\'] = "\\\\".getBytes(UTF_8);
+    REPLACEMENTS['\t'] = "\\t".getBytes(UTF_8);
+    REPLACEMENTS['\b'] = "\\b".getBytes(UTF_8);
+    REPLACEMENTS['\n'] = "\\n".getBytes(UTF_8);
+    REPLACEMENTS['\r'] = "\\r".getBytes(UTF_8);
+    REPLACEMENTS['\f'] = "\\f".getBytes(UTF_8);
+    REPLACEMENTS['<'] = "\\u003c".getBytes(UTF_8);
+    REPLACEMENTS['>'] = "\\u003e".getBytes(UTF_8);
+    REPLACEMENTS['&'] = "\\u0026".getBytes(UTF_8);
+    REPLACEMENTS['='] = "\\u003d".getBytes(UTF_8);
+    REPLACEMENTS['\''] = "\\u0027".getBytes(UTF_8);
+  }
+
+  private static final byte[] LINE_SEPARATOR = "\\u2028".getBytes(UTF_8);
+  private static final byte[] PARAGRAPH_SEPARATOR = "\\u2029".getBytes(UTF_8);
+
+  private final OutputBuffer buffer;
+
+  JsonEncoder(OutputBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  /**
+   * Returns the quoted and escaped string in UTF-8, to precompute the keys.
+   */
+  static byte[] encode(String value) {
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      OutputBuffer buffer = new OutputBuffer(out, 0);
+      new JsonEncoder(buffer).writeString(value);
+      return out.toByteArray();
+    } catch (IOException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  void writeRaw(byte[] bytes) throws IOException {
+    this.buffer.write(bytes, 0, bytes.length);
+  }
+
+  void writeRaw(int b) throws IOException {
+    this.buffer.write(b);
+  }
+
+  /**
+   * Writes the string quoted and escaped.
+   */
+  void writeString(String value) throws IOException {
+    this.buffer.write('"');
+    int from = 0;
+    int length = value.length();
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      byte[] replacement;
+      if (c < 128) {
+        replacement = REPLACEMENTS[c];
+      } else if (c == 0x2028) {
+        replacement = LINE_SEPARATOR;
+      } else if (c == 0x2029) {
+        replacement = PARAGRAPH_SEPARATOR;
+      } else {
+        continue;
+      }
+      if (replacement != null) {
+        this.buffer.writeUtf8(value, from, i);
+        this.buffer.write(replacement, 0, replacement.length);
+        from = i + 1;
+      }
+    }
+    this.buffer.writeUtf8(value, from, length);
+    this.buffer.write('"');
+  }
+
+  /**
+   * Writes the UTF-8 bytes as a quoted and escaped string. Valid UTF-8 is
+   * copied without decoding it, invalid UTF-8 is decoded with replacement
+   * characters first.
+   */
+  void writeString(byte[] utf8) throws IOException {
+    if (!isValidUtf8(utf8)) {
+      writeString(new String(utf8, UTF_8));
+      return;
+    }
+    this.buffer.write('"');
+    int from = 0;
+    for (int i = 0; i < utf8.length; i++) {
+      int b = utf8[i];
+      byte[] replacement;
+      if (b >= 0) {
+        replacement = REPLACEMENTS[b];
+      } else if (b == (byte) 0xe2 && utf8[i + 1] == (byte) 0x80
+          && (utf8[i + 2] == (byte) 0xa8 || utf8[i + 2] == (byte) 0xa9)) {
+        replacement = utf8[i + 2] == (byte) 0xa8 ? LINE_SEPARATOR : PARAGRAPH_SEPARATOR;
+        this.buffer.write(utf8, from, i - from);
+        this.buffer.write(replacement, 0, replacement.length);
+        i += 2;
+        from = i + 1;
+        continue;
+      } else {
+        continue;
+      }
+      if (replacement != null) {
+        this.buffer.write(utf8, from, i - from);
+        this.buffer.write(replacement, 0, replacement.length);
+        from = i + 1;
+      }
+    }
+    this.buffer.write(utf8, from, utf8.length - from);
+    this.buffer.write('"');
+  }
+
+  /**
+   * Returns true if the bytes are well-formed UTF-8, without overlong
+   * encodings nor surrogates.
+   */
+  static boolean isValidUtf8(byte[] bytes) {
+    int i = 0;
+    int length = bytes.length;
+    while (i < length) {
+      int b = bytes[i] & 0xff;
+      if (b < 0x80) {
+        i++;
+        continue;
+      }
+      int n;
+      int min;
+      if (b >= 0xc2 && b <= 0xdf) {
+        n = 1;
+        min = 0x80;
+      } else if (b >= 0xe0 && b <= 0xef) {
+        n = 2;
+        min = 0x800;
+      } else if (b >= 0xf0 && b <= 0xf4) {
+        n = 3;
+        min = 0x10000;
+      } else {
+        return false;
+      }
+      if (i + n >= length) {
+        return false;
+      }
+      int codePoint = b & (0x3f >> n);
+      for (int j = 1; j <= n; j++) {
+        int c = bytes[i + j] & 0xff;
+        if ((c & 0xc0) != 0x80) {
+          return false;
+        }
+        codePoint = (codePoint << 6) | (c & 0x3f);
+      }
+      if (codePoint < min || codePoint > 0x10ffff || (codePoint >= 0xd800 && codePoint <= 0xdfff)) {
+        return false;
+      }
+      i += n + 1;
+    }
+    return true;
+  }
+}
@@ -0,0 +1,292 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.adaltas.flume.serialization;
+
+import java.util.Arrays;
+
+/**
+ * Checks that a body is a single well-formed JSON object, without building
+ * it, and records the boundaries of the object and of its top level members.
+ * The scan works on the bytes: strings, numbers and literals are checked but
+ * never decoded. Objects nested deeper than {@link #MAX_DEPTH} are rejected.
+ */
+final class JsonObjectScanner {
+
+  static final int MAX_DEPTH = 128;
+
+  private byte[] b;
+  private int pos;
+  private int end;
+
+  private int objectStart;
+  private int objectEnd;
+  private int members;
+  // per top level member: the offset of its key, after its key and after its value
+  private int[] keyStarts = new int[16];
+  private int[] keyEnds = new int[16];
+  private int[] valueEnds = new int[16];
+
+  /**
+   * Returns true if the bytes are a JSON object, optionally surrounded by
+   * whitespace.
+   */
+  boolean scan(byte[] bytes) {
+    this.b = bytes;
+    this.pos = 0;
+    this.end = bytes.length;
+    this.members = 0;
+    skipWhitespace();
+    this.objectStart = this.pos;
+    if (!object(0, true)) {
+      return false;
+    }
+    this.objectEnd = this.pos;
+    skipWhitespace();
+    return this.pos == this.end && JsonEncoder.isValidUtf8(bytes);
+  }
+
+  int getObjectStart() {
+    return this.objectStart;
+  }
+
+  int getObjectEnd() {
+    return this.objectEnd;
+  }
+
+  int getMemberCount() {
+    return this.members;
+  }
+
+  /**
+   * Returns the offset of the opening quote of the key of a member.
+   */
+  int getKeyStart(int member) {
+    return this.keyStarts[member];
+  }
+
+  /**
+   * Returns the offset following the closing quote of the key of a member.
+   */
+  int getKeyEnd(int member) {
+    return this.keyEnds[member];
+  }
+
+  /**
+   * Returns the offset following the value of a member.
+   */
+  int getValueEnd(int member) {
+    return this.valueEnds[member];
+  }
+
+  private void skipWhitespace() {
+    while (this.pos < this.end) {
+      byte c = this.b[this.pos];
+      if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+        return;
+      }
+      this.pos++;
+    }
+  }
+
+  private boolean value(int depth) {
+    if (this.pos >= this.end) {
+      return false;
+    }
+    switch (this.b[this.pos]) {
+      case '{':
+        return object(depth + 1, false);
+      case '[':
+        return array(depth + 1);
+      case '"':
+        return string();
+      case 't':
+        return literal("true");
+      case 'f':
+        return literal("false");
+      case 'n':
+        return literal("null");
+      default:
+        return number();
+    }
+  }
+
+  private boolean object(int depth, boolean top) {
+    if (depth > MAX_DEPTH || this.pos >= this.end || this.b[this.pos] != '{') {
+      return false;
+    }
+    this.pos++;
+    skipWhitespace();
+    if (this.pos < this.end && this.b[this.pos] == '}') {
+      this.pos++;
+      return true;
+    }
+    while (true) {
+      int keyStart = this.pos;
+      if (this.pos >= this.end || this.b[this.pos] != '"' || !string()) {
+        return false;
+      }
+      int keyEnd = this.pos;
+      skipWhitespace();
+      if (this.pos >= this.end || this.b[this.pos] != ':') {
+        return false;
+      }
+      this.pos++;
+      skipWhitespace();
+      if (!value(depth)) {
+        return false;
+      }
+      if (top) {
+        addMember(keyStart, keyEnd, this.pos);
+      }
+      skipWhitespace();
+      if (this.pos >= this.end) {
+        return false;
+      }
+      byte c = this.b[this.pos++];
+      if (c == '}') {
+        return true;
+      }
+      if (c != ',') {
+        return false;
+      }
+      skipWhitespace();
+    }
+  }
+
+  private void addMember(int keyStart, int keyEnd, int valueEnd) {
+    if (this.members == this.keyStarts.length) {
+      this.keyStarts = Arrays.copyOf(this.keyStarts, this.members * 2);
+      this.keyEnds = Arrays.copyOf(this.keyEnds, this.members * 2);
+      this.valueEnds = Arrays.copyOf(this.valueEnds, this.members * 2);
+    }
+    this.keyStarts[this.members] = keyStart;
+    this.keyEnds[this.members] = keyEnd;
+    this.valueEnds[this.members] = valueEnd;
+    this.members++;
+  }
+
+  private boolean array(int depth) {
+    if (depth > MAX_DEPTH) {
+      return false;
+    }
+    this.pos++;
+    skipWhitespace();
+    if (this.pos < this.end && this.b[this.pos] == ']') {
+      this.pos++;
+      return true;
+    }
+    while (true) {
+      if (!value(depth)) {
+        return false;
+      }
+      skipWhitespace();
+      if (this.pos >= this.end) {
+        return false;
+      }
+      byte c = this.b[this.pos++];
+      if (c == ']') {
+        return true;
+      }
+      if (c != ',') {
+        return false;
+      }
+      skipWhitespace();
+    }
+  }
+
+  private boolean string() {
+    this.pos++;
+    while (this.pos < this.end) {
+      byte c = this.b[this.pos++];
+      if (c == '"') {
+        return true;
+      }
+      if (c >= 0 && c < 0x20) {
+        return false;
+      }
+      if (c == '\\') {
+        if (this.pos >= this.end) {
+          return false;
+        }
+        byte escaped = this.b[this.pos++];
+        if (escaped == 'u') {
+          for (int i = 0; i < 4; i++) {
+            if (this.pos >= this.end || Character.digit(this.b[this.pos++], 16) < 0) {
+              return false;
+            }
+          }
+        } else if ("\"\\/bfnrt".indexOf(escaped) < 0) {
+          return false;
+        }
+      }
+    }
+    return false;
+  }
+
+  private boolean literal(String literal) {
+    if (this.pos + literal.length() > this.end) {
+      return false;
+    }
+    for (int i = 0; i < literal.length(); i++) {
+      if (this.b[this.pos + i] != literal.charAt(i)) {
+        return false;
+      }
+    }
+    this.pos += literal.length();
+    return true;
+  }
+
+  private boolean number() {
+    if (this.pos < this.end && this.b[this.pos] == '-') {
+      this.pos++;
+    }
+    if (this.pos >= this.end) {
+      return false;
+    }
+    if (this.b[this.pos] == '0') {
+      this.pos++;
+    } else if (!digits()) {
+      return false;
+    }
+    if (this.pos < this.end && this.b[this.pos] == '.') {
+      this.pos++;
+      if (!digits()) {
+        return false;
+      }
+    }
+    if (this.pos < this.end && (this.b[this.pos] == 'e' || this.b[this.pos] == 'E')) {
+      this.pos++;
+      if (this.pos < this.end && (this.b[this.pos] == '+' || this.b[this.pos] == '-')) {
+        this.pos++;
+      }
+      if (!digits()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean digits() {
+    int start = this.pos;
+    while (this.pos < this.end && this.b[this.pos] >= '0' && this.b[this.pos] <= '9') {
+      this.pos++;
+    }
+    return this.pos > start;
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.adaltas.flume.serialization;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A bounded buffer in front of the serializer output stream. The bytes are
+ * written to the output stream when the buffer is full, when it is flushed
+ * or when an array larger than the buffer is written. Flushing only drains
+ * the buffer, flushing or syncing the output stream is left to the sink.
+ * <p>
+ * The byte arrays are taken from a pool shared by the serializers, so that
+ * the serializers created on every file roll reuse them. A buffer size of 0
+ * writes through to the output stream.
+ */
+final class OutputBuffer extends OutputStream {
+
+    private static final int MAX_POOLED = 32;
+    private static final ConcurrentMap<Integer, BlockingQueue<byte[]>> POOLS =
+            new ConcurrentHashMap<Integer, BlockingQueue<byte[]>>();
+
+    private final OutputStream out;
+    private final int capacity;
+    private byte[] buf;
+    private int count;
+
+    OutputBuffer(OutputStream out, int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Buffer size must not be negative: " + capacity);
+        }
+        this.out = out;
+        this.capacity = capacity;
+    }
+
+    private static BlockingQueue<byte[]> pool(int capacity) {
+        BlockingQueue<byte[]> pool = POOLS.get(capacity);
+        if (pool == null) {
+            BlockingQueue<byte[]> created = new ArrayBlockingQueue<byte[]>(MAX_POOLED);
+            pool = POOLS.putIfAbsent(capacity, created);
+            if (pool == null) {
+                pool = created;
+            }
+        }
+        return pool;
+    }
+
+    private byte[] buffer() {
+        if (this.buf == null) {
+            this.buf = pool(this.capacity).poll();
+            if (this.buf == null) {
+                this.buf = new byte[this.capacity];
+            }
+        }
+        return this.buf;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (this.capacity == 0) {
+            this.out.write(b);
+            return;
+        }
+        byte[] buffer = buffer();
+        if (this.count == buffer.length) {
+            drain();
+        }
+        buffer[this.count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len >= this.capacity) {
+            drain();
+            this.out.write(b, off, len);
+            return;
+        }
+        byte[] buffer = buffer();
+        if (len > buffer.length - this.count) {
+            drain();
+        }
+        System.arraycopy(b, off, buffer, this.count, len);
+        this.count += len;
+    }
+
+    /**
+     * Writes the chars from start to end of the string encoded in UTF-8. An
+     * unpaired surrogate is written as '?', like the JDK encoder does.
+     */
+    void writeUtf8(String s, int start, int end) throws IOException {
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                write(c);
+            } else if (c < 0x800) {
+                write(0xc0 | (c >> 6));
+                write(0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                write(0xf0 | (codePoint >> 18));
+                write(0x80 | ((codePoint >> 12) & 0x3f));
+                write(0x80 | ((codePoint >> 6) & 0x3f));
+                write(0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                write('?');
+            } else {
+                write(0xe0 | (c >> 12));
+                write(0x80 | ((c >> 6) & 0x3f));
+                write(0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the output stream.
+     */
+    void drain() throws IOException {
+        if (this.count > 0) {
+            this.out.write(this.buf, 0, this.count);
+            this.count = 0;
+        }
+    }
+
+    /**
+     * Drains the buffer, without flushing the output stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        drain();
+    }
+
+    /**
+     * Drains the buffer and returns its array to the pool.
+     */
+    void release() throws IOException {
+        drain();
+        if (this.buf != null) {
+            pool(this.capacity).offer(this.buf);
+            this.buf = null;
+        }
+    }
+
+    /**
+     * Drains and releases the buffer, the output stream is left open.
+     */
+    @Override
+    public void close() throws IOException {
+        release();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.adaltas.flume.serialization;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.flume.Context;
+
+import com.adaltas.flume.metrics.FlumeMetrics;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * The metrics of a serializer, registered in the {@link FlumeMetrics}
+ * registry as <tt>serializer.&lt;name&gt;.*</tt> and shared by the
+ * serializers of the same kind:
+ * <ul>
+ * <li><tt>events</tt>, <tt>bytes.in</tt>: the events written and their body
+ * bytes</li>
+ * <li><tt>bytes.out</tt>: the bytes written to the sink stream, after
+ * compression</li>
+ * <li><tt>write</tt>, <tt>event.size</tt>: the write latency and the body size
+ * of one event out of <tt>metrics.sampleInterval</tt> (64 by default)</li>
+ * </ul>
+ * A serializer is used by a single sink thread, so the counts are kept in
+ * fields and added to the shared meters when the serializer is flushed.
+ */
+final class SerializerMetrics {
+
+    static final String SAMPLE_INTERVAL = "metrics.sampleInterval";
+    static final int SAMPLE_INTERVAL_DFLT = 64;
+
+    private final Meter events;
+    private final Meter bytesIn;
+    private final Meter bytesOut;
+    private final Timer write;
+    private final Histogram eventSize;
+    private final int sampleInterval;
+    private int untilSample;
+    private long pendingEvents;
+    private long pendingBytesIn;
+    private long pendingBytesOut;
+
+    private SerializerMetrics(MetricRegistry registry, String name, int sampleInterval) {
+        String prefix = MetricRegistry.name("serializer", name);
+        this.events = registry.meter(MetricRegistry.name(prefix, "events"));
+        this.bytesIn = registry.meter(MetricRegistry.name(prefix, "bytes.in"));
+        this.bytesOut = registry.meter(MetricRegistry.name(prefix, "bytes.out"));
+        this.write = registry.timer(MetricRegistry.name(prefix, "write"));
+        this.eventSize = registry.histogram(MetricRegistry.name(prefix, "event.size"));
+        this.sampleInterval = sampleInterval;
+        this.untilSample = 1;
+    }
+
+    /**
+     * Returns the metrics of the serializer, or null when
+     * <tt>metrics.enabled</tt> is false.
+     */
+    static SerializerMetrics configure(String name, Context context) {
+        if (!FlumeMetrics.isEnabled(context)) {
+            return null;
+        }
+        int sampleInterval = context.getInteger(SAMPLE_INTERVAL, SAMPLE_INTERVAL_DFLT);
+        if (sampleInterval <= 0) {
+            throw new IllegalArgumentException(SAMPLE_INTERVAL + " must be positive: " + sampleInterval);
+        }
+        FlumeMetrics.startReporter(context);
+        return new SerializerMetrics(FlumeMetrics.registry(), name, sampleInterval);
+    }
+
+    /**
+     * Counts the bytes written to the stream as bytes out.
+     */
+    OutputStream countBytesOut(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                pendingBytesOut++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                pendingBytesOut += len;
+            }
+        };
+    }
+
+    /**
+     * Called before an event is written.
+     *
+     * @return the start time when the event is sampled, otherwise 0
+     */
+    long startWrite() {
+        if (--untilSample > 0) {
+            return 0;
+        }
+        untilSample = sampleInterval;
+        return System.nanoTime();
+    }
+
+    /**
+     * Called once the event has been written.
+     */
+    void endWrite(long start, int bodyLength) {
+        pendingEvents++;
+        pendingBytesIn += bodyLength;
+        if (start != 0) {
+            write.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            eventSize.update(bodyLength);
+        }
+    }
+
+    /**
+     * Adds the counts since the last flush to the shared meters.
+     */
+    void flush() {
+        if (pendingEvents > 0) {
+            events.mark(pendingEvents);
+            bytesIn.mark(pendingBytesIn);
+            pendingEvents = 0;
+            pendingBytesIn = 0;
+        }
+        if (pendingBytesOut > 0) {
+            bytesOut.mark(pendingBytesOut);
+            pendingBytesOut = 0;
+        }
+    }
+}
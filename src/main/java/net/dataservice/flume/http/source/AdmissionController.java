@@ -0,0 +1,309 @@
+package net.dataservice.flume.http.source;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import org.apache.flume.Channel;
+import org.apache.flume.Context;
+import org.apache.flume.channel.ChannelProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether a request is accepted before its body is read.
+ * <p>
+ * With <tt>admission.enabled</tt> a request is answered with a HTTP 503
+ * status while the source is overloaded: a channel of the source (or the
+ * asynchronous staging buffer) is more than <tt>admission.maxChannelFill</tt>
+ * percent full (95 by default), the average channel commit time is over
+ * <tt>admission.maxCommitLatency</tt> milliseconds (0, not checked, by
+ * default, and halved on each refresh interval without a commit) or a commit failed with a full channel within the last
+ * <tt>admission.refreshInterval</tt> milliseconds. The channel fill is read
+ * from the Flume channel counters at most once per refresh interval (100 ms
+ * by default). The response asks the client to retry after
+ * <tt>admission.retryAfter</tt> seconds (1 by default).
+ * <p>
+ * With <tt>rateLimit.requestsPerSecond</tt> each client IP address has a
+ * token bucket of <tt>rateLimit.burst</tt> requests refilled at that rate,
+ * the requests over the limit are answered with a HTTP 429 status. The
+ * buckets of at most <tt>rateLimit.maxClients</tt> clients (10000) are kept,
+ * and expire after <tt>rateLimit.expiry</tt> seconds (60) without a request.
+ * With <tt>rateLimit.forwardedFor</tt> the client is the first address of the
+ * <tt>X-Forwarded-For</tt> header, when present.
+ * <p>
+ * The rejected requests are closed so that their body is not read.
+ */
+class AdmissionController {
+    private static final Logger LOG = LoggerFactory.getLogger(AdmissionController.class);
+    private static final String X_FORWARDED_FOR = "X-Forwarded-For";
+    private static final String CHANNEL_MBEAN = "org.apache.flume.channel:type=";
+    private static final String CHANNEL_FILL = "ChannelFillPercentage";
+    static final int SC_TOO_MANY_REQUESTS = 429;
+
+    private final boolean overloadEnabled;
+    private final double maxChannelFill;
+    private final long maxCommitLatencyNanos;
+    private final long refreshIntervalNanos;
+    private final long retryAfterSeconds;
+    private final double requestsPerSecond;
+    private final double burst;
+    private final boolean forwardedFor;
+    private final LoadingCache<String, TokenBucket> buckets;
+
+    private final AtomicLong nextRefresh = new AtomicLong();
+    private volatile boolean channelOverloaded;
+    private volatile long channelFullUntil;
+    // average of the commit times, updated without a lock: a lost sample is harmless
+    private volatile long commitLatencyNanos = -1;
+    private volatile long lastCommitNanos;
+    private volatile List<ObjectName> channelCounters = new ArrayList<ObjectName>();
+    private volatile AsyncChannelStage stage;
+    private volatile SourceMetrics metrics;
+
+    private AdmissionController(Context context) {
+        overloadEnabled = context.getBoolean(CustomizedHttpSourceConstants.ADMISSION_ENABLED, false);
+        maxChannelFill = context.getInteger(CustomizedHttpSourceConstants.ADMISSION_MAX_CHANNEL_FILL, 95);
+        maxCommitLatencyNanos = TimeUnit.MILLISECONDS.toNanos(
+                context.getLong(CustomizedHttpSourceConstants.ADMISSION_MAX_COMMIT_LATENCY, 0L));
+        refreshIntervalNanos = TimeUnit.MILLISECONDS.toNanos(
+                context.getLong(CustomizedHttpSourceConstants.ADMISSION_REFRESH_INTERVAL, 100L));
+        retryAfterSeconds = context.getLong(CustomizedHttpSourceConstants.ADMISSION_RETRY_AFTER, 1L);
+        Preconditions.checkArgument(maxChannelFill > 0 && maxChannelFill <= 100,
+                "admission.maxChannelFill must be between 1 and 100");
+        Preconditions.checkArgument(maxCommitLatencyNanos >= 0, "admission.maxCommitLatency must not be negative");
+        Preconditions.checkArgument(refreshIntervalNanos > 0, "admission.refreshInterval must be positive");
+        Preconditions.checkArgument(retryAfterSeconds >= 0, "admission.retryAfter must not be negative");
+
+        String rate = context.getString(CustomizedHttpSourceConstants.RATE_LIMIT_REQUESTS_PER_SECOND);
+        requestsPerSecond = rate == null ? 0 : Double.parseDouble(rate.trim());
+        Preconditions.checkArgument(requestsPerSecond >= 0, "rateLimit.requestsPerSecond must not be negative");
+        String burstStr = context.getString(CustomizedHttpSourceConstants.RATE_LIMIT_BURST);
+        burst = burstStr == null ? Math.max(1, requestsPerSecond) : Double.parseDouble(burstStr.trim());
+        Preconditions.checkArgument(burst >= 1, "rateLimit.burst must be at least 1");
+        forwardedFor = context.getBoolean(CustomizedHttpSourceConstants.RATE_LIMIT_FORWARDED_FOR, false);
+        if (requestsPerSecond > 0) {
+            long maxClients = context.getLong(CustomizedHttpSourceConstants.RATE_LIMIT_MAX_CLIENTS, 10000L);
+            long expiry = context.getLong(CustomizedHttpSourceConstants.RATE_LIMIT_EXPIRY, 60L);
+            Preconditions.checkArgument(maxClients > 0 && expiry > 0,
+                    "rateLimit.maxClients and rateLimit.expiry must be positive");
+            buckets = CacheBuilder.newBuilder()
+                    .maximumSize(maxClients)
+                    .expireAfterAccess(expiry, TimeUnit.SECONDS)
+                    .build(new CacheLoader<String, TokenBucket>() {
+                        @Override
+                        public TokenBucket load(String client) {
+                            return new TokenBucket(burst);
+                        }
+                    });
+        } else {
+            buckets = null;
+        }
+    }
+
+    /**
+     * Returns the controller of the source, or null when neither the overload
+     * detection nor the rate limiting is configured.
+     */
+    static AdmissionController configure(Context context) {
+        AdmissionController controller = new AdmissionController(context);
+        if (!controller.overloadEnabled && controller.buckets == null) {
+            return null;
+        }
+        LOG.info("Admission control enabled, maxChannelFill {}%, maxCommitLatency {}ms, {} requests/s per client",
+                new Object[]{controller.maxChannelFill,
+                        TimeUnit.NANOSECONDS.toMillis(controller.maxCommitLatencyNanos),
+                        controller.requestsPerSecond});
+        return controller;
+    }
+
+    /**
+     * Looks up the counters of the channels of the source, and the staging
+     * buffer if any, once the source is started.
+     */
+    void start(ChannelProcessor channelProcessor, AsyncChannelStage stage, SourceMetrics metrics) {
+        List<ObjectName> counters = new ArrayList<ObjectName>();
+        if (overloadEnabled && channelProcessor != null) {
+            for (Channel channel : channelProcessor.getSelector().getAllChannels()) {
+                try {
+                    counters.add(new ObjectName(CHANNEL_MBEAN + channel.getName()));
+                } catch (Exception ex) {
+                    LOG.warn("Unable to monitor the fill of channel " + channel.getName(), ex);
+                }
+            }
+        }
+        this.channelCounters = counters;
+        this.stage = stage;
+        this.metrics = metrics;
+        long now = System.nanoTime();
+        this.channelOverloaded = false;
+        this.channelFullUntil = now;
+        this.nextRefresh.set(now);
+        this.commitLatencyNanos = -1;
+        this.lastCommitNanos = now;
+    }
+
+    /**
+     * Admits the request or sends the rejection with a <tt>Retry-After</tt>
+     * header.
+     *
+     * @return false if the request was rejected
+     */
+    boolean admit(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (overloadEnabled && isOverloaded()) {
+            if (metrics != null) {
+                metrics.overloaded();
+            }
+            reject(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, retryAfterSeconds,
+                    "Source overloaded. Retry later.");
+            return false;
+        }
+        if (buckets != null) {
+            long waitNanos = buckets.getUnchecked(client(request)).tryAcquire(System.nanoTime(),
+                    requestsPerSecond, burst);
+            if (waitNanos > 0) {
+                if (metrics != null) {
+                    metrics.rateLimited();
+                }
+                reject(response, SC_TOO_MANY_REQUESTS, (waitNanos + 999999999L) / 1000000000L,
+                        "Too many requests. Retry later.");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records the time of a successful channel commit.
+     */
+    void committed(long startNanos) {
+        long now = System.nanoTime();
+        long sample = now - startNanos;
+        long average = commitLatencyNanos;
+        commitLatencyNanos = average < 0 ? sample : average + (sample - average) / 8;
+        lastCommitNanos = now;
+    }
+
+    /**
+     * Records a commit which failed with a full channel, the requests are
+     * rejected until the next refresh of the channel fill.
+     */
+    void channelFull() {
+        channelFullUntil = System.nanoTime() + refreshIntervalNanos;
+    }
+
+    /**
+     * Adds the <tt>Retry-After</tt> hint to a response.
+     */
+    void setRetryAfter(HttpServletResponse response) {
+        response.setHeader("Retry-After", Long.toString(retryAfterSeconds));
+    }
+
+    /**
+     * The channel fill is read once per refresh interval. The average commit
+     * time is halved on every refresh interval without a commit, so the
+     * requests are admitted again once it falls under the limit: rejecting
+     * them would otherwise keep the average from ever being updated.
+     */
+    boolean isOverloaded() {
+        long now = System.nanoTime();
+        long refresh = nextRefresh.get();
+        if (now - refresh >= 0 && nextRefresh.compareAndSet(refresh, now + refreshIntervalNanos)) {
+            channelOverloaded = readFillPercentage() > maxChannelFill;
+            long average = commitLatencyNanos;
+            if (average > 0 && now - lastCommitNanos >= refreshIntervalNanos) {
+                commitLatencyNanos = average / 2;
+            }
+        }
+        if (now - channelFullUntil < 0) {
+            return true;
+        }
+        if (maxCommitLatencyNanos > 0 && commitLatencyNanos > maxCommitLatencyNanos) {
+            return true;
+        }
+        return channelOverloaded;
+    }
+
+    private double readFillPercentage() {
+        double fill = 0;
+        AsyncChannelStage stage = this.stage;
+        if (stage != null) {
+            fill = stage.getFillPercentage();
+        }
+        List<ObjectName> counters = channelCounters;
+        if (counters.isEmpty()) {
+            return fill;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName counter : counters) {
+            try {
+                Object value = server.getAttribute(counter, CHANNEL_FILL);
+                if (value instanceof Number) {
+                    fill = Math.max(fill, ((Number) value).doubleValue());
+                }
+            } catch (Exception ex) {
+                LOG.debug("Unable to read the fill of {}: {}", counter, ex.toString());
+            }
+        }
+        return fill;
+    }
+
+    private String client(HttpServletRequest request) {
+        if (forwardedFor) {
+            String header = request.getHeader(X_FORWARDED_FOR);
+            if (header != null && !header.isEmpty()) {
+                int comma = header.indexOf(',');
+                return (comma < 0 ? header : header.substring(0, comma)).trim();
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    private static void reject(HttpServletResponse response, int status, long retryAfter, String message)
+            throws IOException {
+        response.setHeader("Retry-After", Long.toString(retryAfter));
+        // the body is not read, do not keep the connection
+        response.setHeader("Connection", "close");
+        response.sendError(status, message);
+    }
+
+    /**
+     * The requests allowed for one client.
+     */
+    static final class TokenBucket {
+        private double tokens;
+        private long refilled;
+
+        TokenBucket(double burst) {
+            this.tokens = burst;
+            this.refilled = System.nanoTime();
+        }
+
+        /**
+         * Takes a token.
+         *
+         * @return 0 if a token was taken, otherwise the nanoseconds until the
+         * next token
+         */
+        synchronized long tryAcquire(long now, double rate, double burst) {
+            tokens = Math.min(burst, tokens + (now - refilled) * rate / 1e9);
+            refilled = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return Math.max(1, (long) ((1 - tokens) * 1e9 / rate));
+        }
+    }
+}
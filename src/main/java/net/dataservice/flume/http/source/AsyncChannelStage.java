@@ -0,0 +1,283 @@
+package net.dataservice.flume.http.source;
+
+import org.apache.flume.ChannelException;
+import org.apache.flume.Event;
+import org.apache.flume.channel.ChannelProcessor;
+import org.apache.flume.instrumentation.SourceCounter;
+import org.mortbay.util.ajax.Continuation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded in-memory staging between the Jetty request threads and the
+ * channel.
+ * <p>
+ * Request threads stage the events of a request with {@link #offer(Batch)}
+ * which fails immediately when the staging buffer is full. A small pool of
+ * committer threads drains the buffer and puts the staged events of several
+ * requests into the channel in one transaction of up to <tt>batchSize</tt>
+ * events. A committer waits up to <tt>batchTimeout</tt> milliseconds for more
+ * requests before committing a transaction smaller than <tt>batchSize</tt>, so
+ * many small requests are coalesced into a few large transactions.
+ * <p>
+ * When requests are acknowledged once staged, the events are owned by the
+ * stage: a failed transaction is retried until it succeeds or the stage is
+ * stopped for longer than the retry delay. Otherwise the failure is reported
+ * to every request of the transaction, which waits for it with
+ * {@link Batch#suspend(Continuation, long)} without holding its thread on
+ * the NIO connector. The transactions are timed by the commit timer of the
+ * {@link SourceMetrics} and reported to the {@link AdmissionController}, if
+ * any.
+ */
+class AsyncChannelStage {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncChannelStage.class);
+    private static final long POLL_MILLIS = 100;
+
+    private final ChannelProcessor channelProcessor;
+    private final SourceCounter sourceCounter;
+    private final int capacity;
+    private final int batchSize;
+    private final long batchTimeoutNanos;
+    private final boolean ackOnStage;
+    private final long retryDelayMillis;
+    private final SourceMetrics metrics;
+    private final AdmissionController admission;
+    private final BlockingQueue<Batch> queue;
+    private final Semaphore permits;
+    private final Thread[] committers;
+    private volatile boolean running;
+
+    AsyncChannelStage(String name, ChannelProcessor channelProcessor, SourceCounter sourceCounter,
+                      int capacity, int batchSize, long batchTimeoutMillis, int committers,
+                      boolean ackOnStage, long retryDelayMillis, SourceMetrics metrics,
+                      AdmissionController admission) {
+        this.channelProcessor = channelProcessor;
+        this.sourceCounter = sourceCounter;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.batchTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(batchTimeoutMillis);
+        this.ackOnStage = ackOnStage;
+        this.retryDelayMillis = retryDelayMillis;
+        this.metrics = metrics;
+        this.admission = admission;
+        // every staged batch holds at least one event
+        this.queue = new ArrayBlockingQueue<Batch>(capacity);
+        this.permits = new Semaphore(capacity);
+        this.committers = new Thread[committers];
+        for (int i = 0; i < committers; i++) {
+            this.committers[i] = new Thread(new Committer(), name + "-committer-" + i);
+            this.committers[i].setDaemon(true);
+        }
+    }
+
+    void start() {
+        running = true;
+        for (Thread committer : committers) {
+            committer.start();
+        }
+    }
+
+    /**
+     * Stops accepting batches and waits for the staged ones to be committed.
+     */
+    void stop() throws InterruptedException {
+        running = false;
+        for (Thread committer : committers) {
+            committer.join();
+        }
+        if (!queue.isEmpty()) {
+            LOG.error("{} staged batches could not be committed before the source stopped", queue.size());
+        }
+    }
+
+    /**
+     * Stages the batch unless the buffer is full or the batch is larger than
+     * the whole buffer.
+     *
+     * @return false if the batch was not staged
+     */
+    boolean offer(Batch batch) {
+        int size = batch.events.size();
+        if (!running || size > capacity || !permits.tryAcquire(size)) {
+            return false;
+        }
+        queue.add(batch);
+        return true;
+    }
+
+    /**
+     * @return false if the batch is larger than the staging buffer and must be
+     * committed by the request thread
+     */
+    boolean canStage(int size) {
+        return size <= capacity;
+    }
+
+    /**
+     * @return the percentage of the buffer holding staged events
+     */
+    double getFillPercentage() {
+        return (capacity - permits.availablePermits()) * 100.0 / capacity;
+    }
+
+    boolean isAckOnStage() {
+        return ackOnStage;
+    }
+
+    private void commit(List<Batch> batches, int size) {
+        List<Event> events = new ArrayList<Event>(size);
+        for (Batch batch : batches) {
+            events.addAll(batch.events);
+        }
+        Throwable failure = null;
+        while (true) {
+            long start = System.nanoTime();
+            try {
+                channelProcessor.processEventBatch(events);
+                if (metrics != null) {
+                    metrics.committed(start);
+                }
+                if (admission != null) {
+                    admission.committed(start);
+                }
+                failure = null;
+                break;
+            } catch (Throwable ex) {
+                failure = ex;
+                if (admission != null && ex instanceof ChannelException) {
+                    admission.channelFull();
+                }
+                if (!ackOnStage) {
+                    break;
+                }
+                if (!running) {
+                    LOG.error("Unable to commit " + size + " acknowledged events, they are lost", ex);
+                    break;
+                }
+                LOG.warn("Error appending staged events to channel, retrying in " + retryDelayMillis + "ms", ex);
+                try {
+                    Thread.sleep(retryDelayMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        permits.release(size);
+        for (Batch batch : batches) {
+            if (failure == null) {
+                sourceCounter.incrementAppendBatchAcceptedCount();
+                sourceCounter.addToEventAcceptedCount(batch.events.size());
+            }
+            batch.complete(failure);
+        }
+    }
+
+    private class Committer implements Runnable {
+        public void run() {
+            List<Batch> batches = new ArrayList<Batch>();
+            while (running || !queue.isEmpty()) {
+                try {
+                    Batch first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batches.add(first);
+                    int size = first.events.size();
+                    long deadline = System.nanoTime() + batchTimeoutNanos;
+                    while (size < batchSize) {
+                        Batch next = queue.poll();
+                        if (next == null) {
+                            long remaining = deadline - System.nanoTime();
+                            if (remaining <= 0 || !running
+                                    || (next = queue.poll(remaining, TimeUnit.NANOSECONDS)) == null) {
+                                break;
+                            }
+                        }
+                        batches.add(next);
+                        size += next.events.size();
+                    }
+                    commit(batches, size);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Throwable ex) {
+                    LOG.error("Unexpected error in committer thread", ex);
+                } finally {
+                    batches.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * The events of one request.
+     */
+    static class Batch {
+        private final List<Event> events;
+        private final CountDownLatch committed = new CountDownLatch(1);
+        private volatile Throwable failure;
+        private Continuation continuation;
+
+        Batch(List<Event> events) {
+            this.events = events;
+        }
+
+        List<Event> getEvents() {
+            return events;
+        }
+
+        void complete(Throwable failure) {
+            synchronized (this) {
+                this.failure = failure;
+                committed.countDown();
+                if (continuation != null) {
+                    continuation.resume();
+                }
+            }
+        }
+
+        /**
+         * Suspends the request until the batch is committed or the timeout
+         * expires. The continuation must be created with this batch as mutex.
+         * On the NIO connector the first call throws the Jetty
+         * {@code RetryRequest}, which must not be caught, and the request is
+         * handled again once resumed or expired. The next call returns
+         * immediately, {@link #isDone()} then tells whether it timed out.
+         */
+        void suspend(Continuation continuation, long timeoutMillis) {
+            synchronized (this) {
+                if (!isDone() || continuation.isPending()) {
+                    this.continuation = continuation;
+                    continuation.suspend(timeoutMillis);
+                }
+            }
+        }
+
+        /**
+         * @return false if the batch was not committed in time
+         */
+        boolean await(long timeoutMillis) throws InterruptedException {
+            return committed.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        boolean isDone() {
+            return committed.getCount() == 0;
+        }
+
+        /**
+         * @return the commit failure, null if the events were committed
+         */
+        Throwable getFailure() {
+            return failure;
+        }
+    }
+}
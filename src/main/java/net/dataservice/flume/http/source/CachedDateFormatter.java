@@ -0,0 +1,99 @@
+package net.dataservice.flume.http.source;
+
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Formats timestamps with a Joda pattern and keeps the text of the last
+ * formatted second, so a pattern is formatted at most once per second however
+ * many requests are handled.
+ * <p>
+ * Instances are shared per pattern through {@link #forPattern(String)} and are
+ * thread safe without locking: the cached text is published through a
+ * volatile field and threads racing on a new second format it concurrently,
+ * the last one wins. A pattern with fractions of second (<tt>S</tt>) is
+ * formatted on each call instead, as its text changes within the second.
+ */
+public final class CachedDateFormatter {
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final ConcurrentMap<String, CachedDateFormatter> FORMATTERS =
+            new ConcurrentHashMap<String, CachedDateFormatter>();
+
+    private final String pattern;
+    private final DateTimeFormatter formatter;
+    private final boolean subSecond;
+    private volatile CachedSecond cached = new CachedSecond(Long.MIN_VALUE, null);
+
+    private CachedDateFormatter(String pattern) {
+        this.pattern = pattern;
+        this.formatter = DateTimeFormat.forPattern(pattern);
+        this.subSecond = hasFractionOfSecond(pattern);
+    }
+
+    /**
+     * Whether the pattern has an <tt>S</tt> outside of the quoted text.
+     */
+    static boolean hasFractionOfSecond(String pattern) {
+        boolean quoted = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (c == 'S' && !quoted) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the formatter of the pattern, created on first use.
+     *
+     * @throws IllegalArgumentException if the pattern is invalid
+     */
+    public static CachedDateFormatter forPattern(String pattern) {
+        CachedDateFormatter formatter = FORMATTERS.get(pattern);
+        if (formatter == null) {
+            CachedDateFormatter created = new CachedDateFormatter(pattern);
+            formatter = FORMATTERS.putIfAbsent(pattern, created);
+            if (formatter == null) {
+                formatter = created;
+            }
+        }
+        return formatter;
+    }
+
+    /**
+     * Formats the timestamp in the default time zone, like
+     * {@code new DateTime(millis).toString(pattern)}.
+     */
+    public String format(long millis) {
+        if (subSecond) {
+            return formatter.print(millis);
+        }
+        long second = millis >= 0 ? millis / MILLIS_PER_SECOND : (millis + 1) / MILLIS_PER_SECOND - 1;
+        CachedSecond current = cached;
+        if (current.second != second) {
+            current = new CachedSecond(second, formatter.print(second * MILLIS_PER_SECOND));
+            cached = current;
+        }
+        return current.text;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    private static final class CachedSecond {
+        private final long second;
+        private final String text;
+
+        CachedSecond(long second, String text) {
+            this.second = second;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package net.dataservice.flume.http.source;
+
+import org.apache.flume.conf.Configurable;
+
+/**
+ * Generates the number part of the cookie id given to new visitors by
+ * {@link CustomizedJSONHandler}, the cookie id being written as
+ * {@code <id>_<yyyyMMdd>}.
+ * <p>
+ * Implementations are called concurrently by all the request threads and must
+ * be thread safe. The generator is selected with the <tt>cookie.id.generator</tt>
+ * configuration which accepts the aliases of {@link CookieIdGenerators} or the
+ * name of a class implementing this interface with a public no-arg
+ * constructor. The handler context is passed to {@link #configure}.
+ */
+public interface CookieIdGenerator extends Configurable {
+
+    long nextId();
+}
@@ -0,0 +1,123 @@
+package net.dataservice.flume.http.source;
+
+import com.google.common.base.Preconditions;
+import org.apache.flume.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@link CookieIdGenerator} implementations and their aliases.
+ * <p>
+ * <tt>uuid</tt>: the most significant bits of {@link UUID#randomUUID()}, which
+ * share a single {@code SecureRandom} between all the threads. <p>
+ * <tt>random</tt>: a random long from the {@link ThreadLocalRandom} of the
+ * request thread, without contention. The default. <p>
+ * <tt>time</tt>: the milliseconds since 2017-01-01 on 41 bits, a node id on
+ * 10 bits and a counter on 12 bits. Ids are unique as long as each agent has
+ * its own <tt>cookie.id.node</tt>, between 0 and 1023, which defaults to the
+ * low bits of the host address.
+ */
+public final class CookieIdGenerators {
+    private static final Logger LOG = LoggerFactory.getLogger(CookieIdGenerators.class);
+
+    public static final String UUID_GENERATOR = "uuid";
+    public static final String RANDOM_GENERATOR = "random";
+    public static final String TIME_GENERATOR = "time";
+    public static final String DEFAULT_GENERATOR = RANDOM_GENERATOR;
+
+    private CookieIdGenerators() {
+    }
+
+    /**
+     * Creates and configures the generator named by an alias or a class name.
+     */
+    public static CookieIdGenerator create(String name, Context context) throws Exception {
+        CookieIdGenerator generator;
+        if (UUID_GENERATOR.equalsIgnoreCase(name)) {
+            generator = new UuidGenerator();
+        } else if (RANDOM_GENERATOR.equalsIgnoreCase(name)) {
+            generator = new RandomGenerator();
+        } else if (TIME_GENERATOR.equalsIgnoreCase(name)) {
+            generator = new TimeGenerator();
+        } else {
+            @SuppressWarnings("unchecked")
+            Class<? extends CookieIdGenerator> clazz = (Class<? extends CookieIdGenerator>) Class.forName(name);
+            generator = clazz.getDeclaredConstructor().newInstance();
+        }
+        generator.configure(context);
+        return generator;
+    }
+
+    public static class UuidGenerator implements CookieIdGenerator {
+        public void configure(Context context) {
+            // noop
+        }
+
+        public long nextId() {
+            return UUID.randomUUID().getMostSignificantBits();
+        }
+    }
+
+    public static class RandomGenerator implements CookieIdGenerator {
+        public void configure(Context context) {
+            // noop
+        }
+
+        public long nextId() {
+            return ThreadLocalRandom.current().nextLong();
+        }
+    }
+
+    public static class TimeGenerator implements CookieIdGenerator {
+        // 2017-01-01T00:00:00Z
+        private static final long EPOCH = 1483228800000L;
+        private static final int NODE_BITS = 10;
+        private static final int COUNTER_BITS = 12;
+        private static final long MAX_NODE = (1L << NODE_BITS) - 1;
+
+        /* milliseconds since EPOCH followed by the counter */
+        private final AtomicLong state = new AtomicLong();
+        private long node;
+
+        public void configure(Context context) {
+            Long configured = context.getLong(CustomizedHttpSourceConstants.COOKIE_ID_NODE);
+            if (configured != null) {
+                Preconditions.checkArgument(configured >= 0 && configured <= MAX_NODE,
+                        "cookie.id.node must be between 0 and " + MAX_NODE);
+                node = configured;
+            } else {
+                node = defaultNode();
+            }
+            LOG.info("Init COOKIE_ID_NODE:" + node);
+        }
+
+        public long nextId() {
+            long now = System.currentTimeMillis() - EPOCH;
+            while (true) {
+                long current = state.get();
+                // a full counter overflows into the next millisecond
+                long next = now > (current >>> COUNTER_BITS) ? now << COUNTER_BITS : current + 1;
+                if (state.compareAndSet(current, next)) {
+                    return (next >>> COUNTER_BITS) << (NODE_BITS + COUNTER_BITS)
+                            | node << COUNTER_BITS
+                            | next & ((1L << COUNTER_BITS) - 1);
+                }
+            }
+        }
+
+        private static long defaultNode() {
+            try {
+                byte[] address = InetAddress.getLocalHost().getAddress();
+                return ((address[address.length - 2] & 0xFFL) << 8 | address[address.length - 1] & 0xFFL) & MAX_NODE;
+            } catch (Exception ex) {
+                LOG.warn("Unable to get the local host address, using a random node id", ex);
+                return ThreadLocalRandom.current().nextLong(MAX_NODE + 1);
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package net.dataservice.flume.http.source;
 
+import com.adaltas.flume.metrics.FlumeMetrics;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import org.apache.flume.ChannelException;
@@ -14,15 +15,22 @@ import org.apache.flume.source.http.HTTPSource;
 import org.apache.flume.source.http.HTTPSourceConfigurationConstants;
 import org.apache.flume.source.http.HTTPSourceHandler;
 import org.apache.flume.tools.HTTPServerConstraintUtil;
+import org.mortbay.jetty.AbstractConnector;
 import org.mortbay.jetty.Connector;
 import org.mortbay.jetty.Server;
 import org.mortbay.jetty.nio.SelectChannelConnector;
+import org.mortbay.jetty.security.SslSelectChannelConnector;
 import org.mortbay.jetty.security.SslSocketConnector;
 import org.mortbay.jetty.servlet.ServletHolder;
+import org.mortbay.util.ajax.Continuation;
+import org.mortbay.util.ajax.ContinuationSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSessionContext;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -55,8 +63,45 @@ import java.util.*;
  * append events to the channel, the source will return a HTTP 503 - Temporarily
  * unavailable status.
  *
+ * With <tt>enableSSL</tt> the source uses the non-blocking
+ * <tt>ssl.connector = nio</tt> (the default) or the blocking
+ * <tt>ssl.connector = socket</tt> connector. SSLv3 and the space separated
+ * <tt>excludeProtocols</tt> are always disabled. The enabled cipher suites
+ * are restricted with the space separated <tt>ssl.includeCipherSuites</tt>
+ * and <tt>ssl.excludeCipherSuites</tt>. The NIO connector also accepts
+ * <tt>ssl.sessionCacheSize</tt> and <tt>ssl.sessionTimeout</tt> (seconds)
+ * to size the TLS session cache used for session resumption.
+ *
  * A JSON handler which converts JSON objects to Flume events is provided.
  *
+ * With <tt>async.enabled</tt> the events are handed to an
+ * {@linkplain AsyncChannelStage} instead: they are staged in a bounded buffer
+ * of <tt>async.capacity</tt> events and committed to the channel by
+ * <tt>async.committers</tt> threads, in transactions of up to
+ * <tt>async.batchSize</tt> events gathered from several requests. With
+ * <tt>async.ack = stage</tt> the request is acknowledged as soon as its events
+ * are staged, with <tt>async.ack = commit</tt> (the default) once they are
+ * committed. The source returns a HTTP 503 status when the buffer is full.
+ * A committer waits up to <tt>async.batchTimeout</tt> milliseconds for more
+ * events before committing a smaller transaction. Requests waiting for the
+ * commit are suspended with Jetty continuations and do not hold a thread on
+ * the NIO connectors.
+ *
+ * The Jetty thread pool and connector are tuned with the
+ * <tt>threadPool.*</tt> and <tt>connector.*</tt> parameters described in
+ * {@linkplain HttpServerTuning}.
+ *
+ * Unless <tt>metrics.enabled</tt> is false, the request parsing, enrichment,
+ * channel commit and response times are recorded by {@linkplain SourceMetrics}
+ * in the Dropwizard registry of {@linkplain FlumeMetrics}, exposed over JMX
+ * and reported by the optional <tt>metrics.reporter</tt>.
+ *
+ * With <tt>admission.enabled</tt> or <tt>rateLimit.requestsPerSecond</tt> the
+ * {@linkplain AdmissionController} rejects the requests before their body is
+ * read, with a HTTP 503 status while the channel is full or slow and a HTTP
+ * 429 status for the clients over their request rate, and a
+ * <tt>Retry-After</tt> header.
+ *
  */
 
 public class CustomizedHttpSource extends AbstractSource implements
@@ -80,14 +125,39 @@ public class CustomizedHttpSource extends AbstractSource implements
     private volatile String host;
     private HTTPSourceHandler handler;
     private SourceCounter sourceCounter;
+    private volatile SourceMetrics metrics;
 
     // SSL configuration variable
     private volatile String keyStorePath;
     private volatile String keyStorePassword;
     private volatile Boolean sslEnabled;
     private final List<String> excludedProtocols = new LinkedList<String>();
+    private volatile boolean sslNio;
+    private final List<String> includedCipherSuites = new LinkedList<String>();
+    private final List<String> excludedCipherSuites = new LinkedList<String>();
+    private volatile Integer sslSessionCacheSize;
+    private volatile Integer sslSessionTimeout;
+
+    private static final String SSL_CONNECTOR_NIO = "nio";
+    private static final String SSL_CONNECTOR_SOCKET = "socket";
 
     private static final String RESPONSE_OK = "ok";
+    private static final String ACK_STAGE = "stage";
+    private static final String ACK_COMMIT = "commit";
+
+    // asynchronous channel handoff
+    private volatile boolean asyncEnabled;
+    private volatile boolean asyncAckOnStage;
+    private volatile int asyncCapacity;
+    private volatile int asyncBatchSize;
+    private volatile long asyncBatchTimeout;
+    private volatile int asyncCommitters;
+    private volatile long asyncCommitTimeout;
+    private volatile long asyncRetryDelay;
+    private volatile AsyncChannelStage asyncStage;
+
+    private volatile HttpServerTuning tuning;
+    private volatile AdmissionController admission;
 
     public void configure(Context context) {
         try {
@@ -127,8 +197,54 @@ public class CustomizedHttpSource extends AbstractSource implements
                         excludedProtocols.add("SSLv3");
                     }
                 }
+                String sslConnector = context.getString(CustomizedHttpSourceConstants.SSL_CONNECTOR,
+                        SSL_CONNECTOR_NIO).trim();
+                Preconditions.checkArgument(SSL_CONNECTOR_NIO.equalsIgnoreCase(sslConnector)
+                                || SSL_CONNECTOR_SOCKET.equalsIgnoreCase(sslConnector),
+                        "ssl.connector must be " + SSL_CONNECTOR_NIO + " or " + SSL_CONNECTOR_SOCKET);
+                sslNio = SSL_CONNECTOR_NIO.equalsIgnoreCase(sslConnector);
+                String includeCipherSuitesStr =
+                        context.getString(CustomizedHttpSourceConstants.SSL_INCLUDE_CIPHER_SUITES);
+                if (includeCipherSuitesStr != null && !includeCipherSuitesStr.trim().isEmpty()) {
+                    includedCipherSuites.addAll(Arrays.asList(includeCipherSuitesStr.trim().split("\\s+")));
+                }
+                String excludeCipherSuitesStr =
+                        context.getString(CustomizedHttpSourceConstants.SSL_EXCLUDE_CIPHER_SUITES);
+                if (excludeCipherSuitesStr != null && !excludeCipherSuitesStr.trim().isEmpty()) {
+                    excludedCipherSuites.addAll(Arrays.asList(excludeCipherSuitesStr.trim().split("\\s+")));
+                }
+                sslSessionCacheSize = context.getInteger(CustomizedHttpSourceConstants.SSL_SESSION_CACHE_SIZE);
+                sslSessionTimeout = context.getInteger(CustomizedHttpSourceConstants.SSL_SESSION_TIMEOUT);
+                Preconditions.checkArgument(sslSessionCacheSize == null || sslSessionCacheSize >= 0,
+                        "ssl.sessionCacheSize must not be negative");
+                Preconditions.checkArgument(sslSessionTimeout == null || sslSessionTimeout >= 0,
+                        "ssl.sessionTimeout must not be negative");
+                if (!sslNio && (sslSessionCacheSize != null || sslSessionTimeout != null)) {
+                    LOG.warn("ssl.sessionCacheSize and ssl.sessionTimeout only apply to the nio SSL connector");
+                }
             }
 
+            asyncEnabled = context.getBoolean(CustomizedHttpSourceConstants.ASYNC_ENABLED, false);
+            if (asyncEnabled) {
+                String ack = context.getString(CustomizedHttpSourceConstants.ASYNC_ACK, ACK_COMMIT).trim();
+                Preconditions.checkArgument(ACK_STAGE.equalsIgnoreCase(ack) || ACK_COMMIT.equalsIgnoreCase(ack),
+                        "async.ack must be " + ACK_STAGE + " or " + ACK_COMMIT);
+                asyncAckOnStage = ACK_STAGE.equalsIgnoreCase(ack);
+                asyncCapacity = context.getInteger(CustomizedHttpSourceConstants.ASYNC_CAPACITY, 10000);
+                asyncBatchSize = context.getInteger(CustomizedHttpSourceConstants.ASYNC_BATCH_SIZE, 1000);
+                asyncBatchTimeout = context.getLong(CustomizedHttpSourceConstants.ASYNC_BATCH_TIMEOUT, 0L);
+                asyncCommitters = context.getInteger(CustomizedHttpSourceConstants.ASYNC_COMMITTERS, 2);
+                asyncCommitTimeout = context.getLong(CustomizedHttpSourceConstants.ASYNC_COMMIT_TIMEOUT, 30000L);
+                asyncRetryDelay = context.getLong(CustomizedHttpSourceConstants.ASYNC_RETRY_DELAY, 1000L);
+                Preconditions.checkArgument(asyncCapacity > 0 && asyncBatchSize > 0 && asyncCommitters > 0,
+                        "async.capacity, async.batchSize and async.committers must be positive");
+                LOG.info("Asynchronous channel handoff enabled, ack on {}, capacity {} events",
+                        ack, asyncCapacity);
+            }
+
+            tuning = HttpServerTuning.configure(context);
+            admission = AdmissionController.configure(context);
+
             @SuppressWarnings("unchecked")
             Class<? extends HTTPSourceHandler> clazz = (Class<? extends HTTPSourceHandler>) Class.forName(handlerClassName);
             handler = clazz.getDeclaredConstructor().newInstance();
@@ -138,6 +254,10 @@ public class CustomizedHttpSource extends AbstractSource implements
             //        context.getSubProperties(
             //                HTTPSourceConfigurationConstants.CONFIG_HANDLER_PREFIX);
             handler.configure(context);
+            metrics = SourceMetrics.configure(getName(), context);
+            if (handler instanceof CustomizedJSONHandler) {
+                ((CustomizedJSONHandler) handler).setMetrics(metrics);
+            }
         } catch (ClassNotFoundException ex) {
             LOG.error("Error while configuring HTTPSource. Exception follows.", ex);
             Throwables.propagate(ex);
@@ -173,8 +293,17 @@ public class CustomizedHttpSource extends AbstractSource implements
         Connector[] connectors = new Connector[1];
 
 
-        if (sslEnabled) {
-            SslSocketConnector sslSocketConnector = new CustomizedHttpSource.HTTPSourceSocketConnector(excludedProtocols);
+        if (sslEnabled && sslNio) {
+            SslSelectChannelConnector sslConnector = new CustomizedHttpSource.HTTPSourceSelectChannelConnector(
+                    excludedProtocols, includedCipherSuites, excludedCipherSuites,
+                    sslSessionCacheSize, sslSessionTimeout);
+            sslConnector.setKeystore(keyStorePath);
+            sslConnector.setKeyPassword(keyStorePassword);
+            sslConnector.setReuseAddress(true);
+            connectors[0] = sslConnector;
+        } else if (sslEnabled) {
+            SslSocketConnector sslSocketConnector = new CustomizedHttpSource.HTTPSourceSocketConnector(
+                    excludedProtocols, includedCipherSuites, excludedCipherSuites);
             sslSocketConnector.setKeystore(keyStorePath);
             sslSocketConnector.setKeyPassword(keyStorePassword);
             sslSocketConnector.setReuseAddress(true);
@@ -187,8 +316,19 @@ public class CustomizedHttpSource extends AbstractSource implements
 
         connectors[0].setHost(host);
         connectors[0].setPort(port);
+        tuning.apply((AbstractConnector) connectors[0]);
         srv.setConnectors(connectors);
+        if (asyncEnabled) {
+            asyncStage = new AsyncChannelStage(getName(), getChannelProcessor(), sourceCounter,
+                    asyncCapacity, asyncBatchSize, asyncBatchTimeout, asyncCommitters, asyncAckOnStage,
+                    asyncRetryDelay, metrics, admission);
+            asyncStage.start();
+        }
+        if (admission != null) {
+            admission.start(getChannelProcessor(), asyncStage, metrics);
+        }
         try {
+            srv.setThreadPool(tuning.createThreadPool(getName()));
             org.mortbay.jetty.servlet.Context root = new org.mortbay.jetty.servlet.Context(
                     srv, "/", org.mortbay.jetty.servlet.Context.SESSIONS);
             root.addServlet(new ServletHolder(new CustomizedHttpSource.FlumeHTTPServlet()), "/");
@@ -213,17 +353,44 @@ public class CustomizedHttpSource extends AbstractSource implements
         } catch (Exception ex) {
             LOG.error("Error while stopping HTTPSource. Exception follows.", ex);
         }
+        if (asyncStage != null) {
+            try {
+                asyncStage.stop();
+            } catch (InterruptedException ex) {
+                LOG.error("Interrupted while committing the staged events.", ex);
+                Thread.currentThread().interrupt();
+            }
+            asyncStage = null;
+        }
         sourceCounter.stop();
         LOG.info("Http source {} stopped. Metrics: {}", getName(), sourceCounter);
     }
 
+    /**
+     * @return the connector of the running server
+     */
+    Connector getConnector() {
+        return srv.getConnectors()[0];
+    }
+
     private class FlumeHTTPServlet extends HttpServlet {
 
         private static final long serialVersionUID = 4891924863218790344L;
+        private static final String STAGED_BATCH = CustomizedHttpSource.class.getName() + ".stagedBatch";
 
         @Override
         public void doPost(HttpServletRequest request, HttpServletResponse response)
                 throws IOException {
+            AsyncChannelStage.Batch staged = (AsyncChannelStage.Batch) request.getAttribute(STAGED_BATCH);
+            if (staged != null) {
+                // resumed or expired continuation, the events are already staged
+                awaitCommit(staged, request, response);
+                return;
+            }
+            AdmissionController admission = CustomizedHttpSource.this.admission;
+            if (admission != null && !admission.admit(request, response)) {
+                return;
+            }
             List<Event> events = Collections.emptyList(); //create empty list
             try {
                 if(handler instanceof CustomizedJSONHandler){
@@ -233,6 +400,18 @@ public class CustomizedHttpSource extends AbstractSource implements
                     events = handler.getEvents(request);
                 }
                 LOG.debug("Receive events from remote host {}", request.getRemoteHost());
+            } catch (RequestTooLargeException ex) {
+                LOG.warn("Received too large request from client. {}", ex.getMessage());
+                // the rest of the body is not read, do not keep the connection
+                response.setHeader("Connection", "close");
+                if (ex.getReason() == RequestLimits.Reason.BODY_READ_TIME) {
+                    response.sendError(HttpServletResponse.SC_REQUEST_TIMEOUT,
+                            "Request timeout. " + ex.getMessage());
+                } else {
+                    response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+                            "Request too large. " + ex.getMessage());
+                }
+                return;
             } catch (HTTPBadRequestException ex) {
                 LOG.warn("Received bad request from client. ", ex);
                 response.sendError(HttpServletResponse.SC_BAD_REQUEST,
@@ -248,12 +427,28 @@ public class CustomizedHttpSource extends AbstractSource implements
             }
             sourceCounter.incrementAppendBatchReceivedCount();
             sourceCounter.addToEventReceivedCount(events.size());
+            AsyncChannelStage stage = asyncStage;
+            if (stage != null && !events.isEmpty() && stage.canStage(events.size())) {
+                stageEvents(stage, events, request, response);
+                return;
+            }
+            long start = System.nanoTime();
             try {
                 getChannelProcessor().processEventBatch(events);
+                if (metrics != null) {
+                    metrics.committed(start);
+                }
+                if (admission != null) {
+                    admission.committed(start);
+                }
             } catch (ChannelException ex) {
                 LOG.warn("Error appending event to channel. "
                         + "Channel might be full. Consider increasing the channel "
                         + "capacity or make sure the sinks perform faster.", ex);
+                if (admission != null) {
+                    admission.channelFull();
+                    admission.setRetryAfter(response);
+                }
                 response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
                         "Error appending event to channel. Channel might be full."
                                 + ex.getMessage());
@@ -265,12 +460,90 @@ public class CustomizedHttpSource extends AbstractSource implements
                                 + ex.getMessage());
                 return;
             }
+            writeResponseOk(request, response);
+            sourceCounter.incrementAppendBatchAcceptedCount();
+            sourceCounter.addToEventAcceptedCount(events.size());
+        }
+
+        /**
+         * Stages the events and, unless requests are acknowledged on stage,
+         * waits for their commit. The accepted counters are updated by the stage.
+         */
+        private void stageEvents(AsyncChannelStage stage, List<Event> events,
+                                 HttpServletRequest request, HttpServletResponse response) throws IOException {
+            AsyncChannelStage.Batch batch = new AsyncChannelStage.Batch(events);
+            if (!stage.offer(batch)) {
+                LOG.debug("Staging buffer full, rejecting {} events", events.size());
+                if (admission != null) {
+                    admission.setRetryAfter(response);
+                }
+                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                        "Staging buffer is full. Retry later.");
+                return;
+            }
+            if (stage.isAckOnStage()) {
+                writeResponseOk(request, response);
+                return;
+            }
+            request.setAttribute(STAGED_BATCH, batch);
+            awaitCommit(batch, request, response);
+        }
+
+        /**
+         * Suspends the request until the staged batch is committed. With the
+         * NIO connector this throws the Jetty RetryRequest and doPost is called
+         * again once the batch is committed or the timeout expired.
+         */
+        private void awaitCommit(AsyncChannelStage.Batch batch,
+                                 HttpServletRequest request, HttpServletResponse response) throws IOException {
+            Continuation continuation = ContinuationSupport.getContinuation(request, batch);
+            batch.suspend(continuation, asyncCommitTimeout);
+            if (!batch.isDone()) {
+                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                        "Timed out waiting for the events to be appended to the channel.");
+                return;
+            }
+            if (sendCommitFailure(batch.getFailure(), response)) {
+                writeResponseOk(request, response);
+            }
+        }
+
+        /**
+         * @return true if the events were committed, otherwise the error has
+         * been sent
+         */
+        private boolean sendCommitFailure(Throwable failure, HttpServletResponse response) throws IOException {
+            if (failure == null) {
+                return true;
+            }
+            if (failure instanceof ChannelException) {
+                LOG.warn("Error appending event to channel. "
+                        + "Channel might be full. Consider increasing the channel "
+                        + "capacity or make sure the sinks perform faster.", failure);
+                if (admission != null) {
+                    admission.setRetryAfter(response);
+                }
+                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                        "Error appending event to channel. Channel might be full."
+                                + failure.getMessage());
+            } else {
+                LOG.warn("Unexpected error appending event to channel. ", failure);
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                        "Unexpected error while appending event to channel. "
+                                + failure.getMessage());
+            }
+            return false;
+        }
+
+        private void writeResponseOk(HttpServletRequest request, HttpServletResponse response) throws IOException {
+            long start = System.nanoTime();
             response.setCharacterEncoding(request.getCharacterEncoding());
             response.setStatus(HttpServletResponse.SC_OK);
             response.getWriter().write(RESPONSE_OK);
             response.flushBuffer();
-            sourceCounter.incrementAppendBatchAcceptedCount();
-            sourceCounter.addToEventAcceptedCount(events.size());
+            if (metrics != null) {
+                metrics.responded(start);
+            }
         }
 
         @Override
@@ -280,25 +553,95 @@ public class CustomizedHttpSource extends AbstractSource implements
         }
     }
 
-    private static class HTTPSourceSocketConnector extends SslSocketConnector {
+    /**
+     * Returns the enabled names which are included (all if <tt>included</tt>
+     * is empty) and not excluded, in the order of <tt>enabled</tt>.
+     */
+    static String[] filterEnabled(String[] enabled, List<String> included, List<String> excluded) {
+        List<String> names = new ArrayList<String>(enabled.length);
+        for (String name: enabled) {
+            if ((included.isEmpty() || included.contains(name)) && !excluded.contains(name)) {
+                names.add(name);
+            }
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+    static class HTTPSourceSocketConnector extends SslSocketConnector {
         private final List<String> excludedProtocols;
+        private final List<String> includedCipherSuites;
+        private final List<String> excludedCipherSuites;
 
-        HTTPSourceSocketConnector(List<String> excludedProtocols) {
+        HTTPSourceSocketConnector(List<String> excludedProtocols, List<String> includedCipherSuites,
+                                  List<String> excludedCipherSuites) {
             this.excludedProtocols = excludedProtocols;
+            this.includedCipherSuites = includedCipherSuites;
+            this.excludedCipherSuites = excludedCipherSuites;
         }
 
         @Override
         public ServerSocket newServerSocket(String host, int port, int backlog) throws IOException {
             SSLServerSocket socket = (SSLServerSocket)super.newServerSocket(host, port, backlog);
-            String[] protocols = socket.getEnabledProtocols();
-            List<String> newProtocols = new ArrayList<String>(protocols.length);
-            for (String protocol: protocols) {
-                if (!excludedProtocols.contains(protocol)) {
-                    newProtocols.add(protocol);
-                }
+            socket.setEnabledProtocols(filterEnabled(socket.getEnabledProtocols(),
+                    Collections.<String>emptyList(), excludedProtocols));
+            if (!includedCipherSuites.isEmpty()) {
+                socket.setEnabledCipherSuites(filterEnabled(socket.getSupportedCipherSuites(),
+                        includedCipherSuites, excludedCipherSuites));
+            } else if (!excludedCipherSuites.isEmpty()) {
+                socket.setEnabledCipherSuites(filterEnabled(socket.getEnabledCipherSuites(),
+                        includedCipherSuites, excludedCipherSuites));
             }
-            socket.setEnabledProtocols(newProtocols.toArray(new String[newProtocols.size()]));
             return socket;
         }
     }
+
+    /**
+     * The non-blocking SSL connector. Unlike the socket connector it supports
+     * continuations and does not need a thread per idle keep-alive connection.
+     */
+    static class HTTPSourceSelectChannelConnector extends SslSelectChannelConnector {
+        private final List<String> excludedProtocols;
+        private final List<String> includedCipherSuites;
+        private final List<String> excludedCipherSuites;
+        private final Integer sessionCacheSize;
+        private final Integer sessionTimeout;
+
+        HTTPSourceSelectChannelConnector(List<String> excludedProtocols, List<String> includedCipherSuites,
+                                         List<String> excludedCipherSuites, Integer sessionCacheSize,
+                                         Integer sessionTimeout) {
+            this.excludedProtocols = excludedProtocols;
+            this.includedCipherSuites = includedCipherSuites;
+            this.excludedCipherSuites = excludedCipherSuites;
+            this.sessionCacheSize = sessionCacheSize;
+            this.sessionTimeout = sessionTimeout;
+        }
+
+        @Override
+        protected SSLContext createSSLContext() throws Exception {
+            SSLContext context = super.createSSLContext();
+            SSLSessionContext sessionContext = context.getServerSessionContext();
+            if (sessionCacheSize != null) {
+                sessionContext.setSessionCacheSize(sessionCacheSize);
+            }
+            if (sessionTimeout != null) {
+                sessionContext.setSessionTimeout(sessionTimeout);
+            }
+            return context;
+        }
+
+        @Override
+        protected SSLEngine createSSLEngine() throws IOException {
+            SSLEngine engine = super.createSSLEngine();
+            engine.setEnabledProtocols(filterEnabled(engine.getEnabledProtocols(),
+                    Collections.<String>emptyList(), excludedProtocols));
+            if (!includedCipherSuites.isEmpty()) {
+                engine.setEnabledCipherSuites(filterEnabled(engine.getSupportedCipherSuites(),
+                        includedCipherSuites, excludedCipherSuites));
+            } else if (!excludedCipherSuites.isEmpty()) {
+                engine.setEnabledCipherSuites(filterEnabled(engine.getEnabledCipherSuites(),
+                        includedCipherSuites, excludedCipherSuites));
+            }
+            return engine;
+        }
+    }
 }
@@ -10,4 +10,61 @@ public class CustomizedHttpSourceConstants {
     public static final String SESSION_ID = "session.id";
     public static final String WRITE_COOKIE = "write.cookie";
     public static final String VALIDATE_HEADERS = "validate.headers";
+    public static final String VALIDATE_HEADER_PREFIX = "validate.header.";
+    public static final String VALIDATE_CHARS = "chars";
+    public static final String VALIDATE_MAX_LENGTH = "maxLength";
+    public static final String VALIDATE_VALUES = "values";
+    public static final String VALIDATE_RULE = "rule";
+    public static final String PARSER = "parser";
+    public static final String DATE_TIME_PATTERN = "date.time.pattern";
+    public static final String COOKIE_ID_GENERATOR = "cookie.id.generator";
+    public static final String COOKIE_ID_NODE = "cookie.id.node";
+
+    public static final String ASYNC_ENABLED = "async.enabled";
+    public static final String ASYNC_ACK = "async.ack";
+    public static final String ASYNC_CAPACITY = "async.capacity";
+    public static final String ASYNC_BATCH_SIZE = "async.batchSize";
+    public static final String ASYNC_BATCH_TIMEOUT = "async.batchTimeout";
+    public static final String ASYNC_COMMITTERS = "async.committers";
+    public static final String ASYNC_COMMIT_TIMEOUT = "async.commitTimeout";
+    public static final String ASYNC_RETRY_DELAY = "async.retryDelay";
+
+    public static final String ADMISSION_ENABLED = "admission.enabled";
+    public static final String ADMISSION_MAX_CHANNEL_FILL = "admission.maxChannelFill";
+    public static final String ADMISSION_MAX_COMMIT_LATENCY = "admission.maxCommitLatency";
+    public static final String ADMISSION_REFRESH_INTERVAL = "admission.refreshInterval";
+    public static final String ADMISSION_RETRY_AFTER = "admission.retryAfter";
+    public static final String RATE_LIMIT_REQUESTS_PER_SECOND = "rateLimit.requestsPerSecond";
+    public static final String RATE_LIMIT_BURST = "rateLimit.burst";
+    public static final String RATE_LIMIT_MAX_CLIENTS = "rateLimit.maxClients";
+    public static final String RATE_LIMIT_EXPIRY = "rateLimit.expiry";
+    public static final String RATE_LIMIT_FORWARDED_FOR = "rateLimit.forwardedFor";
+
+    public static final String MAX_INFLATED_SIZE = "maxInflatedSize";
+    public static final String MAX_BODY_SIZE = "maxBodySize";
+    public static final String MAX_EVENTS = "maxEvents";
+    public static final String MAX_HEADERS = "maxHeaders";
+    public static final String MAX_HEADER_VALUE_LENGTH = "maxHeaderValueLength";
+    // checked after each read, a client which stops sending is only dropped by connector.maxIdleTime
+    public static final String MAX_BODY_READ_TIME = "maxBodyReadTime";
+
+    public static final String SSL_CONNECTOR = "ssl.connector";
+    public static final String SSL_INCLUDE_CIPHER_SUITES = "ssl.includeCipherSuites";
+    public static final String SSL_EXCLUDE_CIPHER_SUITES = "ssl.excludeCipherSuites";
+    public static final String SSL_SESSION_CACHE_SIZE = "ssl.sessionCacheSize";
+    public static final String SSL_SESSION_TIMEOUT = "ssl.sessionTimeout";
+
+    public static final String THREAD_POOL_TYPE = "threadPool.type";
+    public static final String THREAD_POOL_MIN_THREADS = "threadPool.minThreads";
+    public static final String THREAD_POOL_MAX_THREADS = "threadPool.maxThreads";
+    public static final String THREAD_POOL_MAX_IDLE_TIME = "threadPool.maxIdleTime";
+    public static final String THREAD_POOL_LOW_THREADS = "threadPool.lowThreads";
+    public static final String CONNECTOR_ACCEPTORS = "connector.acceptors";
+    public static final String CONNECTOR_ACCEPT_QUEUE_SIZE = "connector.acceptQueueSize";
+    public static final String CONNECTOR_MAX_IDLE_TIME = "connector.maxIdleTime";
+    public static final String CONNECTOR_LOW_RESOURCES_MAX_IDLE_TIME = "connector.lowResourcesMaxIdleTime";
+    public static final String CONNECTOR_LOW_RESOURCES_CONNECTIONS = "connector.lowResourcesConnections";
+    public static final String CONNECTOR_HEADER_BUFFER_SIZE = "connector.headerBufferSize";
+    public static final String CONNECTOR_REQUEST_BUFFER_SIZE = "connector.requestBufferSize";
+    public static final String CONNECTOR_RESPONSE_BUFFER_SIZE = "connector.responseBufferSize";
 }
@@ -11,12 +11,11 @@ import com.google.gson.JsonSyntaxException;
 import com.google.gson.reflect.TypeToken;
 import org.apache.flume.Context;
 import org.apache.flume.Event;
-import org.apache.flume.event.EventBuilder;
 import org.apache.flume.event.JSONEvent;
+import org.apache.flume.event.SimpleEvent;
 import org.apache.flume.source.http.HTTPBadRequestException;
 import org.apache.flume.source.http.HTTPSourceHandler;
 import org.apache.flume.source.http.JSONHandler;
-import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,10 +24,9 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.BufferedReader;
 import java.lang.reflect.Type;
+import java.nio.charset.Charset;
 import java.nio.charset.UnsupportedCharsetException;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * JSONHandler for HTTPSource that accepts an array of events.
@@ -66,6 +64,21 @@ import java.util.regex.Pattern;
  * {@code
  * Type type = new TypeToken<List<JSONEvent>>() {}.getType();
  * }
+ * <p>
+ * With <tt>parser = streaming</tt> the array is read token by token with a
+ * {@linkplain StreamingJSONEventReader} and the events are created directly,
+ * without the intermediate {@linkplain JSONEvent} list. The default
+ * <tt>gson</tt> parser binds the whole request with {@linkplain Gson}.
+ * <p>
+ * Request bodies with a <tt>gzip</tt> or <tt>deflate</tt>
+ * <tt>Content-Encoding</tt> are decompressed while they are parsed. The
+ * request is read within the {@linkplain RequestLimits} on the body size
+ * (<tt>maxBodySize</tt> and <tt>maxInflatedSize</tt>, 16 MB by default), the
+ * events, the headers and the read time. The reading stops as soon as a limit
+ * is crossed and the request is rejected with a HTTP 413 status.
+ * <p>
+ * Within a {@linkplain CustomizedHttpSource} the parsing and enrichment
+ * times and the rejected events are recorded by its {@linkplain SourceMetrics}.
  */
 
 public class CustomizedJSONHandler implements HTTPSourceHandler {
@@ -86,15 +99,21 @@ public class CustomizedJSONHandler implements HTTPSourceHandler {
     private static final String DEFAULT_DOMAIN = "";
     private static final int SECONDS_PER_YEAR = 60 * 60 * 24 * 365;
     private static final int SECONDS_HALF_HOUR = 60 * 30;
-    private Pattern pattern = Pattern.compile("^\\w+$");
-    private String[] headers = null;
+    private static final String PARSER_GSON = "gson";
+    private static final String PARSER_STREAMING = "streaming";
 
     private String cookieDomain;
     private String cookiePath;
     private String headerCookieID;
     private String headerSessionID;
-    private String validHeaders;
+    private HeaderValidator headerValidator;
     private boolean writeCookie;
+    private boolean streamingParser;
+    private RequestLimits limits;
+    private CachedDateFormatter dateTimeFormatter;
+    private CookieIdGenerator cookieIdGenerator;
+    private SourceMetrics metrics;
+    private final CachedDateFormatter dateFormatter = CachedDateFormatter.forPattern(DATE_FORMAT);
 
     public CustomizedJSONHandler() {
         gson = new GsonBuilder().disableHtmlEscaping().create();
@@ -108,8 +127,6 @@ public class CustomizedJSONHandler implements HTTPSourceHandler {
     }
 
     public List<Event> getEvents(HttpServletRequest request, HttpServletResponse response) throws Exception {
-        BufferedReader reader = request.getReader();
-
         String charset = request.getCharacterEncoding();
         //UTF-8 is default for JSON. If no charset is specified, UTF-8 is to
         //be assumed.
@@ -126,6 +143,40 @@ public class CustomizedJSONHandler implements HTTPSourceHandler {
                     + "UTF-16 and UTF-32 only.");
         }
 
+        BufferedReader reader = null;
+        try {
+            reader = RequestBodyDecoder.openReader(request, charset, limits);
+            return readEvents(reader, charset, request, response);
+        } catch (RequestTooLargeException ex) {
+            limits.rejected(ex.getReason());
+            if (metrics != null) {
+                metrics.limitExceeded(ex.getReason());
+            }
+            throw ex;
+        } finally {
+            if (reader != null && RequestBodyDecoder.isEncoded(request)) {
+                reader.close();
+            }
+        }
+    }
+
+    private List<Event> readEvents(BufferedReader reader, String charset, HttpServletRequest request,
+                                   HttpServletResponse response) throws Exception {
+        long start = System.nanoTime();
+        if (streamingParser) {
+            List<Event> eventList = new StreamingJSONEventReader(Charset.forName(charset), limits)
+                    .readEvents(reader);
+            if (metrics == null) {
+                return decorateEvents(eventList, getRequestHeaders(request, response));
+            }
+            metrics.parsed(start);
+            start = System.nanoTime();
+            int received = eventList.size();
+            List<Event> events = decorateEvents(eventList, getRequestHeaders(request, response));
+            metrics.enriched(start, received, events.size());
+            return events;
+        }
+
         /*
          * Gson throws Exception if the data is not parseable to JSON.
          * Need not catch it since the source will catch it and return error.
@@ -136,13 +187,19 @@ public class CustomizedJSONHandler implements HTTPSourceHandler {
         } catch (JsonSyntaxException ex) {
             throw new HTTPBadRequestException("Request has invalid JSON Syntax.", ex);
         }
+        limits.checkEvents(eventList.size());
+        for (Event e : eventList) {
+            limits.checkHeaders(e.getHeaders());
+        }
+        if (metrics != null) {
+            metrics.parsed(start);
+            start = System.nanoTime();
+        }
 
         Map<String, String> requestHeaders = getRequestHeaders(request, response);
         for (Event e : eventList) {
             ((JSONEvent) e).setCharset(charset);
-            if (e.getHeaders() != null) {
-                e.getHeaders().putAll(requestHeaders);
-            }else{
+            if (e.getHeaders() == null) {
                 StringBuilder buffer = new StringBuilder();
                 String line = "";
                 while ((line = reader.readLine()) != null){
@@ -150,7 +207,11 @@ public class CustomizedJSONHandler implements HTTPSourceHandler {
                 }
             }
         }
-        return getSimpleEvents(eventList);
+        List<Event> events = getSimpleEvents(eventList, requestHeaders);
+        if (metrics != null) {
+            metrics.enriched(start, eventList.size(), events.size());
+        }
+        return events;
     }
 
     public void configure(Context context) {
@@ -159,25 +220,48 @@ public class CustomizedJSONHandler implements HTTPSourceHandler {
         this.headerCookieID = context.getString(CustomizedHttpSourceConstants.COOKIE_ID, DEFAULT_CID);
         this.headerSessionID = context.getString(CustomizedHttpSourceConstants.SESSION_ID, DEFAULT_SID);
         this.writeCookie = context.getBoolean(CustomizedHttpSourceConstants.WRITE_COOKIE, false);
-        this.validHeaders = context.getString(CustomizedHttpSourceConstants.VALIDATE_HEADERS, "");
-        LOG.info("Init VALIDATE_HEADERS:" + validHeaders);
-        if (validHeaders != null && !"".equals(validHeaders)) {
-            headers = validHeaders.split(",");
+        LOG.info("Init VALIDATE_HEADERS:" + context.getString(CustomizedHttpSourceConstants.VALIDATE_HEADERS, ""));
+        try {
+            this.headerValidator = HeaderValidator.configure(context);
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("Invalid header validation configuration", ex);
+        }
+        String parser = context.getString(CustomizedHttpSourceConstants.PARSER, PARSER_GSON).trim();
+        if (PARSER_STREAMING.equalsIgnoreCase(parser)) {
+            this.streamingParser = true;
+        } else if (PARSER_GSON.equalsIgnoreCase(parser)) {
+            this.streamingParser = false;
+        } else {
+            throw new IllegalArgumentException("Unknown parser " + parser
+                    + ", expected " + PARSER_GSON + " or " + PARSER_STREAMING);
         }
+        LOG.info("Init PARSER:" + parser);
+        String dateTimePattern = context.getString(CustomizedHttpSourceConstants.DATE_TIME_PATTERN, DATE_TIME_FORMAT);
+        this.dateTimeFormatter = CachedDateFormatter.forPattern(dateTimePattern);
+        LOG.info("Init DATE_TIME_PATTERN:" + dateTimePattern);
+        String generator = context.getString(CustomizedHttpSourceConstants.COOKIE_ID_GENERATOR,
+                CookieIdGenerators.DEFAULT_GENERATOR).trim();
+        try {
+            this.cookieIdGenerator = CookieIdGenerators.create(generator, context);
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("Unable to create the cookie id generator " + generator, ex);
+        }
+        LOG.info("Init COOKIE_ID_GENERATOR:" + generator);
+        this.limits = RequestLimits.configure(context);
     }
 
     private Map<String, String> getRequestHeaders(HttpServletRequest request, HttpServletResponse response) {
         Map<String, String> requestHeaders = new HashMap<String, String>();
 
-        DateTime currentDateTime = new DateTime();
-        String datetime = currentDateTime.toString(DATE_TIME_FORMAT);
-        requestHeaders.put(DATE_TIME, datetime);
+        long now = System.currentTimeMillis();
+        requestHeaders.put(DATE_TIME, dateTimeFormatter.format(now));
         requestHeaders.put(USER_AGENT, getRequestHeader(request, USER_AGENT, "-"));
         requestHeaders.put(REFERER, getRequestHeader(request, REFERER, "-"));
         requestHeaders.put(X_FORWARDED_FOR, getIPAddress(getRequestHeader(request, X_FORWARDED_FOR)));
-        requestHeaders.put(this.headerCookieID, getCookieID(request, response, currentDateTime.toString(DATE_FORMAT)));
-        requestHeaders.put(this.headerSessionID, getSessionID(request, response));
-        return requestHeaders;
+        requestHeaders.put(this.headerCookieID, getCookieID(request, response, now));
+        requestHeaders.put(this.headerSessionID, getSessionID(request, response, now));
+        // shared by all the events of the request, see LayeredHeaderMap
+        return Collections.unmodifiableMap(requestHeaders);
     }
 
     private String getIPAddress(String xForwardedFor) {
@@ -200,10 +284,10 @@ public class CustomizedJSONHandler implements HTTPSourceHandler {
         return value != null ? value : defaultValue;
     }
 
-    private String getCookieID(HttpServletRequest request, HttpServletResponse response, String currentDateTime) {
+    private String getCookieID(HttpServletRequest request, HttpServletResponse response, long now) {
         String cid = getCookie(request, this.headerCookieID);
         if (isEmpty(cid)) {
-            cid = UUID.randomUUID().getMostSignificantBits() + "_" + currentDateTime;
+            cid = cookieIdGenerator.nextId() + "_" + dateFormatter.format(now);
             if (this.writeCookie) {
                 setCookie(response, ImmutableMap.of("name", this.headerCookieID, "value", cid,
                         "max_age", SECONDS_PER_YEAR, "path", this.cookiePath, "domain", this.cookieDomain));
@@ -213,15 +297,15 @@ public class CustomizedJSONHandler implements HTTPSourceHandler {
         return cid;
     }
 
-    private String getSessionID(HttpServletRequest request, HttpServletResponse response) {
+    private String getSessionID(HttpServletRequest request, HttpServletResponse response, long now) {
         String sid = getCookie(request, this.headerSessionID);
 
         boolean needSetCookie = true;
         if (isEmpty(sid)) {
-            sid = String.valueOf(new Date().getTime());
+            sid = String.valueOf(now);
         } else {
             try {
-                long nowTimeInMillSeconds = new Date().getTime();
+                long nowTimeInMillSeconds = now;
                 int index = sid.indexOf("_");
                 if (index != -1) {
                     sid = sid.substring(0, index);
@@ -280,32 +364,56 @@ public class CustomizedJSONHandler implements HTTPSourceHandler {
         response.addCookie(cookie);
     }
 
-    private List<Event> getSimpleEvents(List<Event> events) {
+    private List<Event> getSimpleEvents(List<Event> events, Map<String, String> requestHeaders) {
         List<Event> newEvents = new ArrayList<Event>(events.size());
         for (Event e : events) {
-            if (e.getHeaders() != null && validateHeader(e)) {
-                newEvents.add(EventBuilder.withBody(e.getBody(), e.getHeaders()));
+            if (e.getHeaders() != null) {
+                Event event = new SimpleEvent();
+                event.setBody(e.getBody());
+                event.setHeaders(new LayeredHeaderMap(e.getHeaders(), requestHeaders));
+                if (validateHeader(event)) {
+                    newEvents.add(event);
+                }
             }
         }
         return newEvents;
     }
 
-    private boolean validateHeader(Event event) {
-        if (headers != null) {
-            for (String header : headers) {
-                String headerValue = event.getHeaders().get(header);
-                if (headerValue == null || "".equals(header.trim())) {
-                    LOG.error("Empty Header value for: " + header);
-                    return false;
-                }
-                Matcher m = pattern.matcher(headerValue);
-                if (!m.find()) {
-                    LOG.error("Unavailable Header: " + header + "\t" + headerValue);
-                    return false;
-                }
+    /**
+     * Layers the request headers over the headers of the events built by the
+     * streaming parser and drops the ones which do not validate. The list is
+     * filtered in place.
+     */
+    private List<Event> decorateEvents(List<Event> events, Map<String, String> requestHeaders) {
+        int kept = 0;
+        for (int i = 0; i < events.size(); i++) {
+            Event e = events.get(i);
+            e.setHeaders(new LayeredHeaderMap(e.getHeaders(), requestHeaders));
+            if (validateHeader(e)) {
+                events.set(kept++, e);
             }
         }
-        return true;
+        events.subList(kept, events.size()).clear();
+        return events;
+    }
+
+    private boolean validateHeader(Event event) {
+        return headerValidator == null || headerValidator.validate(event.getHeaders());
+    }
+
+    /**
+     * Records the request metrics of the source, none by default.
+     */
+    void setMetrics(SourceMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    HeaderValidator getHeaderValidator() {
+        return headerValidator;
+    }
+
+    RequestLimits getRequestLimits() {
+        return limits;
     }
 
     private static boolean isEmpty(String value) {
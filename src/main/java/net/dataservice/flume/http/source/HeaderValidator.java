@@ -0,0 +1,218 @@
+package net.dataservice.flume.http.source;
+
+import com.google.common.base.Preconditions;
+import org.apache.flume.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Validates the headers listed by <tt>validate.headers</tt>, compiled once
+ * when the handler is configured.
+ * <p>
+ * Every listed header must be present and not empty. By default its value
+ * must only contain word characters, <tt>[a-zA-Z0-9_]</tt>. The checks of a
+ * header can be changed with the following configurations: <p>
+ * <tt>validate.header.&lt;name&gt;.chars</tt>: the allowed ASCII characters,
+ * as characters and ranges such as <tt>a-zA-Z0-9_.-</tt>. A backslash escapes
+ * the next character. <p>
+ * <tt>validate.header.&lt;name&gt;.maxLength</tt>: the maximum length. <p>
+ * <tt>validate.header.&lt;name&gt;.values</tt>: the comma separated list of
+ * allowed values. <p>
+ * <tt>validate.header.&lt;name&gt;.rule</tt>: the class name of a
+ * {@link HeaderValueRule}. <p>
+ * The default characters only apply when none of <tt>chars</tt>,
+ * <tt>values</tt> and <tt>rule</tt> is set.
+ * <p>
+ * Rejections are counted per {@link Reason} instead of being logged one by
+ * one, a summary is logged at most once per minute.
+ */
+final class HeaderValidator {
+    private static final Logger LOG = LoggerFactory.getLogger(HeaderValidator.class);
+    private static final String DEFAULT_CHARS = "a-zA-Z0-9_";
+    private static final long SUMMARY_INTERVAL_MILLIS = 60 * 1000L;
+
+    enum Reason {
+        MISSING, TOO_LONG, INVALID_CHARACTER, NOT_ALLOWED, REJECTED_BY_RULE
+    }
+
+    private final HeaderCheck[] checks;
+    private final AtomicLongArray rejected = new AtomicLongArray(Reason.values().length);
+    private final AtomicLong lastSummary = new AtomicLong(System.currentTimeMillis());
+    private final AtomicLong rejectedSinceSummary = new AtomicLong();
+
+    private HeaderValidator(HeaderCheck[] checks) {
+        this.checks = checks;
+    }
+
+    /**
+     * Compiles the validation configured in the context.
+     *
+     * @return the validator, or null when no header is validated
+     */
+    static HeaderValidator configure(Context context) throws Exception {
+        String validHeaders = context.getString(CustomizedHttpSourceConstants.VALIDATE_HEADERS, "");
+        List<HeaderCheck> checks = new ArrayList<HeaderCheck>();
+        for (String header : validHeaders.split(",")) {
+            header = header.trim();
+            if (header.length() > 0) {
+                checks.add(compile(header, context));
+            }
+        }
+        if (checks.isEmpty()) {
+            return null;
+        }
+        return new HeaderValidator(checks.toArray(new HeaderCheck[checks.size()]));
+    }
+
+    private static HeaderCheck compile(String header, Context context) throws Exception {
+        String prefix = CustomizedHttpSourceConstants.VALIDATE_HEADER_PREFIX + header + ".";
+        String chars = context.getString(prefix + CustomizedHttpSourceConstants.VALIDATE_CHARS);
+        Integer maxLength = context.getInteger(prefix + CustomizedHttpSourceConstants.VALIDATE_MAX_LENGTH);
+        String values = context.getString(prefix + CustomizedHttpSourceConstants.VALIDATE_VALUES);
+        String ruleClassName = context.getString(prefix + CustomizedHttpSourceConstants.VALIDATE_RULE);
+
+        if (chars == null && values == null && ruleClassName == null) {
+            chars = DEFAULT_CHARS;
+        }
+        Set<String> allowedValues = null;
+        if (values != null) {
+            allowedValues = new HashSet<String>();
+            for (String value : values.split(",")) {
+                allowedValues.add(value.trim());
+            }
+        }
+        HeaderValueRule rule = null;
+        if (ruleClassName != null) {
+            @SuppressWarnings("unchecked")
+            Class<? extends HeaderValueRule> clazz = (Class<? extends HeaderValueRule>) Class.forName(ruleClassName.trim());
+            rule = clazz.getDeclaredConstructor().newInstance();
+        }
+        Preconditions.checkArgument(maxLength == null || maxLength > 0,
+                "Invalid maxLength for header " + header);
+        LOG.info("Validate header {} with chars={}, maxLength={}, values={}, rule={}",
+                new Object[]{header, chars, maxLength, allowedValues, ruleClassName});
+        return new HeaderCheck(header, chars == null ? null : compileChars(chars),
+                maxLength == null ? Integer.MAX_VALUE : maxLength, allowedValues, rule);
+    }
+
+    /**
+     * Compiles a character class to a bitmap of the 128 ASCII characters.
+     */
+    static long[] compileChars(String chars) {
+        long[] bitmap = new long[2];
+        int i = 0;
+        while (i < chars.length()) {
+            char c = chars.charAt(i++);
+            if (c == '\\' && i < chars.length()) {
+                c = chars.charAt(i++);
+            }
+            char end = c;
+            if (i + 1 < chars.length() && chars.charAt(i) == '-') {
+                end = chars.charAt(i + 1);
+                if (end == '\\' && i + 2 < chars.length()) {
+                    end = chars.charAt(i + 2);
+                    i++;
+                }
+                i += 2;
+                Preconditions.checkArgument(end >= c, "Invalid range " + c + "-" + end + " in " + chars);
+            }
+            Preconditions.checkArgument(end < 128, "Only ASCII characters are supported in " + chars);
+            for (char r = c; r <= end; r++) {
+                bitmap[r >> 6] |= 1L << r;
+            }
+        }
+        return bitmap;
+    }
+
+    boolean validate(Map<String, String> headers) {
+        for (HeaderCheck check : checks) {
+            String value = headers.get(check.header);
+            Reason reason = check.check(value);
+            if (reason != null) {
+                reject(check.header, value, reason);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long getRejectedCount(Reason reason) {
+        return rejected.get(reason.ordinal());
+    }
+
+    private void reject(String header, String value, Reason reason) {
+        rejected.incrementAndGet(reason.ordinal());
+        rejectedSinceSummary.incrementAndGet();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Rejected event, header {} is {}: {}", new Object[]{header, reason, value});
+        }
+        long now = System.currentTimeMillis();
+        long last = lastSummary.get();
+        if (now - last >= SUMMARY_INTERVAL_MILLIS && lastSummary.compareAndSet(last, now)) {
+            long count = rejectedSinceSummary.getAndSet(0);
+            LOG.warn("Rejected {} events with invalid headers in the last {} seconds. Totals: {}",
+                    new Object[]{count, (now - last) / 1000, getRejectedCounts()});
+        }
+    }
+
+    private String getRejectedCounts() {
+        StringBuilder counts = new StringBuilder();
+        for (Reason reason : Reason.values()) {
+            if (counts.length() > 0) {
+                counts.append(", ");
+            }
+            counts.append(reason).append('=').append(getRejectedCount(reason));
+        }
+        return counts.toString();
+    }
+
+    private static final class HeaderCheck {
+        private final String header;
+        private final long[] chars;
+        private final int maxLength;
+        private final Set<String> values;
+        private final HeaderValueRule rule;
+
+        HeaderCheck(String header, long[] chars, int maxLength, Set<String> values, HeaderValueRule rule) {
+            this.header = header;
+            this.chars = chars;
+            this.maxLength = maxLength;
+            this.values = values;
+            this.rule = rule;
+        }
+
+        Reason check(String value) {
+            if (value == null || value.length() == 0) {
+                return Reason.MISSING;
+            }
+            if (value.length() > maxLength) {
+                return Reason.TOO_LONG;
+            }
+            if (chars != null) {
+                long low = chars[0];
+                long high = chars[1];
+                for (int i = 0; i < value.length(); i++) {
+                    char c = value.charAt(i);
+                    if (c >= 128 || ((c < 64 ? low : high) & (1L << c)) == 0) {
+                        return Reason.INVALID_CHARACTER;
+                    }
+                }
+            }
+            if (values != null && !values.contains(value)) {
+                return Reason.NOT_ALLOWED;
+            }
+            if (rule != null && !rule.accept(header, value)) {
+                return Reason.REJECTED_BY_RULE;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package net.dataservice.flume.http.source;
+
+/**
+ * Custom check of a header value, configured with
+ * <tt>validate.header.&lt;name&gt;.rule = &lt;class name&gt;</tt>.
+ * <p>
+ * Implementations need a public no-arg constructor and must be thread safe.
+ * They are called after the built-in checks, with a non empty value.
+ */
+public interface HeaderValueRule {
+
+    boolean accept(String header, String value);
+}
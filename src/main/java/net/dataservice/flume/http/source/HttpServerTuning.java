@@ -0,0 +1,141 @@
+package net.dataservice.flume.http.source;
+
+import com.google.common.base.Preconditions;
+import org.apache.flume.Context;
+import org.mortbay.jetty.AbstractConnector;
+import org.mortbay.jetty.nio.SelectChannelConnector;
+import org.mortbay.thread.QueuedThreadPool;
+import org.mortbay.thread.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Jetty thread pool and connector settings of {@link CustomizedHttpSource}.
+ * <p>
+ * Only the configured settings are applied, the others keep the Jetty
+ * defaults. <p>
+ * <tt>threadPool.type</tt>: <tt>queued</tt> (the default) for a Jetty
+ * {@link QueuedThreadPool}, or the class name of a Jetty {@link ThreadPool}
+ * with a public no-arg constructor. <p>
+ * <tt>threadPool.minThreads</tt>, <tt>threadPool.maxThreads</tt>,
+ * <tt>threadPool.maxIdleTime</tt> (ms) and <tt>threadPool.lowThreads</tt>,
+ * the number of idle threads under which the server is low on resources,
+ * apply to the queued thread pool. <p>
+ * <tt>connector.acceptors</tt>: the number of acceptor threads. <p>
+ * <tt>connector.acceptQueueSize</tt>: the accept backlog. <p>
+ * <tt>connector.maxIdleTime</tt> (ms): the idle timeout of a connection. <p>
+ * <tt>connector.lowResourcesMaxIdleTime</tt> (ms): the idle timeout when the
+ * server is low on resources. <p>
+ * <tt>connector.lowResourcesConnections</tt>: the number of connections over
+ * which the NIO connectors are low on resources. <p>
+ * <tt>connector.headerBufferSize</tt>, <tt>connector.requestBufferSize</tt> and
+ * <tt>connector.responseBufferSize</tt>: the buffer sizes in bytes.
+ */
+class HttpServerTuning {
+    private static final Logger LOG = LoggerFactory.getLogger(HttpServerTuning.class);
+    private static final String QUEUED_POOL = "queued";
+
+    private String threadPoolType;
+    private Integer minThreads;
+    private Integer maxThreads;
+    private Integer threadMaxIdleTime;
+    private Integer lowThreads;
+    private Integer acceptors;
+    private Integer acceptQueueSize;
+    private Integer maxIdleTime;
+    private Integer lowResourcesMaxIdleTime;
+    private Integer lowResourcesConnections;
+    private Integer headerBufferSize;
+    private Integer requestBufferSize;
+    private Integer responseBufferSize;
+
+    static HttpServerTuning configure(Context context) {
+        HttpServerTuning tuning = new HttpServerTuning();
+        tuning.threadPoolType = context.getString(CustomizedHttpSourceConstants.THREAD_POOL_TYPE, QUEUED_POOL).trim();
+        tuning.minThreads = positive(context, CustomizedHttpSourceConstants.THREAD_POOL_MIN_THREADS);
+        tuning.maxThreads = positive(context, CustomizedHttpSourceConstants.THREAD_POOL_MAX_THREADS);
+        tuning.threadMaxIdleTime = positive(context, CustomizedHttpSourceConstants.THREAD_POOL_MAX_IDLE_TIME);
+        tuning.lowThreads = positive(context, CustomizedHttpSourceConstants.THREAD_POOL_LOW_THREADS);
+        tuning.acceptors = positive(context, CustomizedHttpSourceConstants.CONNECTOR_ACCEPTORS);
+        tuning.acceptQueueSize = positive(context, CustomizedHttpSourceConstants.CONNECTOR_ACCEPT_QUEUE_SIZE);
+        tuning.maxIdleTime = positive(context, CustomizedHttpSourceConstants.CONNECTOR_MAX_IDLE_TIME);
+        tuning.lowResourcesMaxIdleTime =
+                positive(context, CustomizedHttpSourceConstants.CONNECTOR_LOW_RESOURCES_MAX_IDLE_TIME);
+        tuning.lowResourcesConnections =
+                positive(context, CustomizedHttpSourceConstants.CONNECTOR_LOW_RESOURCES_CONNECTIONS);
+        tuning.headerBufferSize = positive(context, CustomizedHttpSourceConstants.CONNECTOR_HEADER_BUFFER_SIZE);
+        tuning.requestBufferSize = positive(context, CustomizedHttpSourceConstants.CONNECTOR_REQUEST_BUFFER_SIZE);
+        tuning.responseBufferSize = positive(context, CustomizedHttpSourceConstants.CONNECTOR_RESPONSE_BUFFER_SIZE);
+        Preconditions.checkArgument(tuning.minThreads == null || tuning.maxThreads == null
+                || tuning.minThreads <= tuning.maxThreads,
+                "threadPool.minThreads must not be greater than threadPool.maxThreads");
+        return tuning;
+    }
+
+    private static Integer positive(Context context, String key) {
+        Integer value = context.getInteger(key);
+        Preconditions.checkArgument(value == null || value > 0, key + " must be positive");
+        return value;
+    }
+
+    ThreadPool createThreadPool(String name) throws Exception {
+        if (!QUEUED_POOL.equalsIgnoreCase(threadPoolType)) {
+            @SuppressWarnings("unchecked")
+            Class<? extends ThreadPool> clazz = (Class<? extends ThreadPool>) Class.forName(threadPoolType);
+            LOG.info("Using thread pool {}", threadPoolType);
+            return clazz.getDeclaredConstructor().newInstance();
+        }
+        QueuedThreadPool pool = new QueuedThreadPool();
+        pool.setName(name);
+        if (maxThreads != null) {
+            pool.setMaxThreads(maxThreads);
+        }
+        if (minThreads != null) {
+            pool.setMinThreads(minThreads);
+        }
+        if (threadMaxIdleTime != null) {
+            pool.setMaxIdleTimeMs(threadMaxIdleTime);
+        }
+        if (lowThreads != null) {
+            pool.setLowThreads(lowThreads);
+        }
+        LOG.info("Using queued thread pool, minThreads={}, maxThreads={}, maxIdleTime={}, lowThreads={}",
+                new Object[]{minThreads, maxThreads, threadMaxIdleTime, lowThreads});
+        return pool;
+    }
+
+    void apply(AbstractConnector connector) {
+        if (acceptors != null) {
+            connector.setAcceptors(acceptors);
+        }
+        if (acceptQueueSize != null) {
+            connector.setAcceptQueueSize(acceptQueueSize);
+        }
+        if (maxIdleTime != null) {
+            connector.setMaxIdleTime(maxIdleTime);
+        }
+        if (lowResourcesMaxIdleTime != null) {
+            connector.setLowResourceMaxIdleTime(lowResourcesMaxIdleTime);
+        }
+        if (headerBufferSize != null) {
+            connector.setHeaderBufferSize(headerBufferSize);
+        }
+        if (requestBufferSize != null) {
+            connector.setRequestBufferSize(requestBufferSize);
+        }
+        if (responseBufferSize != null) {
+            connector.setResponseBufferSize(responseBufferSize);
+        }
+        if (lowResourcesConnections != null) {
+            if (connector instanceof SelectChannelConnector) {
+                ((SelectChannelConnector) connector).setLowResourcesConnections(lowResourcesConnections);
+            } else {
+                LOG.warn("connector.lowResourcesConnections only applies to the NIO connectors");
+            }
+        }
+        LOG.info("Connector acceptors={}, acceptQueueSize={}, maxIdleTime={}, lowResourcesMaxIdleTime={}, "
+                + "lowResourcesConnections={}, headerBufferSize={}, requestBufferSize={}, responseBufferSize={}",
+                new Object[]{acceptors, acceptQueueSize, maxIdleTime, lowResourcesMaxIdleTime,
+                        lowResourcesConnections, headerBufferSize, requestBufferSize, responseBufferSize});
+    }
+}
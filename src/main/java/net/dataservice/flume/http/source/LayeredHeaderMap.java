@@ -0,0 +1,198 @@
+package net.dataservice.flume.http.source;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Event headers layered over the request headers shared by all the events of
+ * a request.
+ * <p>
+ * The shared headers take precedence over the event headers, exactly as if
+ * they had been copied with {@code putAll} into every event, but they are never
+ * copied as long as they are only read. The first write touching one of them
+ * copies the shared headers into the event headers, so other events of the
+ * request are not affected. The shared map must not be modified once events
+ * use it.
+ */
+final class LayeredHeaderMap extends AbstractMap<String, String> {
+    private final Map<String, String> local;
+    private Map<String, String> shared;
+    private Set<Map.Entry<String, String>> entrySet;
+
+    /**
+     * @param local the event own headers, entries overridden by the shared
+     *              headers are removed from it
+     * @param shared the request headers, read only
+     */
+    LayeredHeaderMap(Map<String, String> local, Map<String, String> shared) {
+        this.local = local;
+        this.shared = shared;
+        for (String key : shared.keySet()) {
+            local.remove(key);
+        }
+    }
+
+    @Override
+    public int size() {
+        return shared == null ? local.size() : local.size() + shared.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return (shared != null && shared.containsKey(key)) || local.containsKey(key);
+    }
+
+    @Override
+    public String get(Object key) {
+        if (shared != null) {
+            String value = shared.get(key);
+            if (value != null || shared.containsKey(key)) {
+                return value;
+            }
+        }
+        return local.get(key);
+    }
+
+    @Override
+    public String put(String key, String value) {
+        if (shared != null && shared.containsKey(key)) {
+            copyShared();
+        }
+        return local.put(key, value);
+    }
+
+    @Override
+    public String remove(Object key) {
+        if (shared != null && shared.containsKey(key)) {
+            copyShared();
+        }
+        return local.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        shared = null;
+        local.clear();
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<String, String>>() {
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator() {
+                    return shared == null ? local.entrySet().iterator() : new LayeredIterator(shared);
+                }
+
+                @Override
+                public int size() {
+                    return LayeredHeaderMap.this.size();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private void copyShared() {
+        local.putAll(shared);
+        shared = null;
+    }
+
+    /**
+     * Iterates the shared headers then the event headers. If an entry is
+     * removed or set while iterating the shared headers, the shared headers are
+     * copied and the event headers are iterated from a snapshot of their keys.
+     */
+    private final class LayeredIterator implements Iterator<Map.Entry<String, String>> {
+        private final Iterator<Map.Entry<String, String>> sharedIt;
+        private Iterator<Map.Entry<String, String>> localIt;
+        private List<String> localKeys;
+        private int localIndex;
+        private Map.Entry<String, String> current;
+        private boolean currentShared;
+
+        LayeredIterator(Map<String, String> layer) {
+            this.sharedIt = layer.entrySet().iterator();
+        }
+
+        public boolean hasNext() {
+            if (sharedIt.hasNext()) {
+                return true;
+            }
+            if (localKeys != null) {
+                return localIndex < localKeys.size();
+            }
+            return localIterator().hasNext();
+        }
+
+        public Map.Entry<String, String> next() {
+            if (sharedIt.hasNext()) {
+                current = new SharedEntry(sharedIt.next());
+                currentShared = true;
+            } else if (localKeys != null) {
+                if (localIndex >= localKeys.size()) {
+                    throw new NoSuchElementException();
+                }
+                String key = localKeys.get(localIndex++);
+                current = new SharedEntry(new SimpleImmutableEntry<String, String>(key, local.get(key)));
+                currentShared = true;
+            } else {
+                current = localIterator().next();
+                currentShared = false;
+            }
+            return current;
+        }
+
+        public void remove() {
+            if (current == null) {
+                throw new IllegalStateException();
+            }
+            if (currentShared) {
+                detach();
+                local.remove(current.getKey());
+            } else {
+                localIt.remove();
+            }
+            current = null;
+        }
+
+        private void detach() {
+            if (shared != null) {
+                localKeys = new ArrayList<String>(local.keySet());
+                copyShared();
+            }
+        }
+
+        private Iterator<Map.Entry<String, String>> localIterator() {
+            if (localIt == null) {
+                localIt = local.entrySet().iterator();
+            }
+            return localIt;
+        }
+
+        /**
+         * Entry which is not backed by the event headers, setting its value
+         * copies the shared headers first.
+         */
+        private final class SharedEntry extends SimpleEntry<String, String> {
+            private static final long serialVersionUID = -4360123470391452037L;
+
+            SharedEntry(Map.Entry<String, String> entry) {
+                super(entry);
+            }
+
+            @Override
+            public String setValue(String value) {
+                detach();
+                super.setValue(value);
+                return local.put(getKey(), value);
+            }
+        }
+    }
+}
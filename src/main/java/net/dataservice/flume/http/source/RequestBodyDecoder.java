@@ -0,0 +1,179 @@
+package net.dataservice.flume.http.source;
+
+import org.apache.flume.source.http.HTTPBadRequestException;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Decodes the <tt>gzip</tt> and <tt>deflate</tt> request bodies while they
+ * are read. The body is limited to <tt>maxBodySize</tt> bytes as sent and
+ * <tt>maxInflatedSize</tt> bytes once decoded, a larger body fails with a
+ * {@linkplain RequestTooLargeException} as soon as the limit is crossed, and
+ * so does a body read for longer than <tt>maxBodyReadTime</tt>, checked when a
+ * read returns (a blocked read ends with the connector idle timeout). Both the
+ * zlib wrapped deflate stream of the HTTP specification and the raw deflate
+ * stream sent by some clients are accepted.
+ */
+final class RequestBodyDecoder {
+    static final String CONTENT_ENCODING = "Content-Encoding";
+    static final String GZIP = "gzip";
+    static final String X_GZIP = "x-gzip";
+    static final String DEFLATE = "deflate";
+    static final String IDENTITY = "identity";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private RequestBodyDecoder() {
+    }
+
+    /**
+     * Returns true if the request body has a content encoding to decode.
+     */
+    static boolean isEncoded(HttpServletRequest request) {
+        String encoding = request.getHeader(CONTENT_ENCODING);
+        return encoding != null && !encoding.trim().isEmpty() && !IDENTITY.equalsIgnoreCase(encoding.trim());
+    }
+
+    /**
+     * Returns a reader of the decoded request body. The reader of an encoded
+     * body must be closed to release its inflater.
+     */
+    static BufferedReader openReader(HttpServletRequest request, String charset, RequestLimits limits)
+            throws IOException {
+        limits.checkContentLength(request);
+        InputStream body = new BoundedInputStream(request.getInputStream(), null, limits.getMaxBodySize(),
+                RequestLimits.Reason.BODY_SIZE, limits.bodyReadDeadline());
+        if (!isEncoded(request)) {
+            return new BufferedReader(new InputStreamReader(body, charset), BUFFER_SIZE);
+        }
+        String encoding = request.getHeader(CONTENT_ENCODING).trim();
+        InputStream in;
+        try {
+            if (GZIP.equalsIgnoreCase(encoding) || X_GZIP.equalsIgnoreCase(encoding)) {
+                in = new GZIPInputStream(body, BUFFER_SIZE);
+            } else if (DEFLATE.equalsIgnoreCase(encoding)) {
+                in = inflate(body);
+            } else {
+                throw new HTTPBadRequestException("Unsupported Content-Encoding " + encoding);
+            }
+        } catch (ZipException ex) {
+            throw new HTTPBadRequestException("Request body is not valid " + encoding, ex);
+        } catch (EOFException ex) {
+            throw new HTTPBadRequestException("Request body is not valid " + encoding, ex);
+        }
+        return new BufferedReader(new InputStreamReader(new BoundedInputStream(in, encoding,
+                limits.getMaxInflatedSize(), RequestLimits.Reason.INFLATED_SIZE, 0), charset), BUFFER_SIZE);
+    }
+
+    private static InputStream inflate(InputStream body) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(body, 2);
+        int cmf = in.read();
+        int flg = cmf < 0 ? -1 : in.read();
+        if (flg >= 0) {
+            in.unread(flg);
+        }
+        if (cmf >= 0) {
+            in.unread(cmf);
+        }
+        // RFC 1950 header: deflate method and a check value multiple of 31
+        boolean zlib = cmf >= 0 && flg >= 0 && (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+        return new EndingInflaterInputStream(in, new Inflater(!zlib));
+    }
+
+    /**
+     * An inflater stream which releases its own inflater when it is closed.
+     */
+    private static class EndingInflaterInputStream extends InflaterInputStream {
+        EndingInflaterInputStream(InputStream in, Inflater inflater) {
+            super(in, inflater, BUFFER_SIZE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                inf.end();
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes read, checks the read deadline if any and reports the
+     * corrupted encoded bodies as bad requests.
+     */
+    private static class BoundedInputStream extends FilterInputStream {
+        private final String encoding;
+        private final long limit;
+        private final RequestLimits.Reason reason;
+        private final long deadline;
+        private long count;
+
+        BoundedInputStream(InputStream in, String encoding, long limit, RequestLimits.Reason reason,
+                           long deadline) {
+            super(in);
+            this.encoding = encoding;
+            this.limit = limit;
+            this.reason = reason;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long remaining = limit - count;
+            int n;
+            try {
+                // read one byte past the limit to detect a larger body
+                n = in.read(b, off, remaining < len ? (int) remaining + 1 : len);
+            } catch (ZipException ex) {
+                throw new HTTPBadRequestException("Request body is not valid " + encoding, ex);
+            } catch (EOFException ex) {
+                throw new HTTPBadRequestException("Request body is truncated " + encoding, ex);
+            }
+            if (n > 0) {
+                count += n;
+                if (count > limit) {
+                    throw new RequestTooLargeException(reason, (encoding == null ? "Request body exceeds "
+                            : "Inflated request body exceeds ") + limit + " bytes");
+                }
+            }
+            if (deadline != 0 && System.nanoTime() - deadline > 0) {
+                throw new RequestTooLargeException(RequestLimits.Reason.BODY_READ_TIME,
+                        "Request body not read in time, " + count + " bytes read");
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (n <= 0) {
+                return 0;
+            }
+            byte[] b = new byte[(int) Math.min(n, BUFFER_SIZE)];
+            int read = read(b, 0, b.length);
+            return read < 0 ? 0 : read;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
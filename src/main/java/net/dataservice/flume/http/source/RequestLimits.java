@@ -0,0 +1,177 @@
+package net.dataservice.flume.http.source;
+
+import org.apache.flume.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The limits of a request read by {@link CustomizedJSONHandler}, enforced
+ * while the request is read: the request fails with a
+ * {@link RequestTooLargeException} as soon as a limit is crossed.
+ * <p>
+ * <tt>maxBodySize</tt>: the bytes of the request body as sent, 16 MB by
+ * default. A larger <tt>Content-Length</tt> is rejected before the body is
+ * read. <p>
+ * <tt>maxInflatedSize</tt>: the bytes of a <tt>gzip</tt> or <tt>deflate</tt>
+ * body once decompressed, 16 MB by default. <p>
+ * <tt>maxEvents</tt>: the events of a request. <p>
+ * <tt>maxHeaders</tt>: the headers of an event. <p>
+ * <tt>maxHeaderValueLength</tt>: the characters of a header value. <p>
+ * <tt>maxBodyReadTime</tt>: the milliseconds to read the body, to drop the
+ * clients sending it slowly. The time is checked each time a read returns: a
+ * client which stops sending altogether blocks the read until the
+ * <tt>connector.maxIdleTime</tt> of the source expires, which should be set
+ * no longer than <tt>maxBodyReadTime</tt>. <p>
+ * A limit of 0, the default of the last four, is not checked. The streaming
+ * parser checks the events and headers while it reads them, the Gson parser
+ * once the request is bound. Rejections are counted per {@link Reason}.
+ */
+class RequestLimits {
+    private static final Logger LOG = LoggerFactory.getLogger(RequestLimits.class);
+    private static final long DEFAULT_MAX_SIZE = 16 * 1024 * 1024;
+
+    enum Reason {
+        BODY_SIZE, INFLATED_SIZE, EVENTS, HEADERS, HEADER_VALUE_LENGTH, BODY_READ_TIME
+    }
+
+    private final long maxBodySize;
+    private final long maxInflatedSize;
+    private final int maxEvents;
+    private final int maxHeaders;
+    private final int maxHeaderValueLength;
+    private final long maxBodyReadTimeNanos;
+    private final AtomicLongArray rejected = new AtomicLongArray(Reason.values().length);
+
+    private RequestLimits(long maxBodySize, long maxInflatedSize, int maxEvents, int maxHeaders,
+                          int maxHeaderValueLength, long maxBodyReadTimeMillis) {
+        this.maxBodySize = maxBodySize;
+        this.maxInflatedSize = maxInflatedSize;
+        this.maxEvents = maxEvents;
+        this.maxHeaders = maxHeaders;
+        this.maxHeaderValueLength = maxHeaderValueLength;
+        this.maxBodyReadTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxBodyReadTimeMillis);
+    }
+
+    static RequestLimits configure(Context context) {
+        long maxBodySize = context.getLong(CustomizedHttpSourceConstants.MAX_BODY_SIZE, DEFAULT_MAX_SIZE);
+        long maxInflatedSize = context.getLong(CustomizedHttpSourceConstants.MAX_INFLATED_SIZE, DEFAULT_MAX_SIZE);
+        int maxEvents = context.getInteger(CustomizedHttpSourceConstants.MAX_EVENTS, 0);
+        int maxHeaders = context.getInteger(CustomizedHttpSourceConstants.MAX_HEADERS, 0);
+        int maxHeaderValueLength = context.getInteger(CustomizedHttpSourceConstants.MAX_HEADER_VALUE_LENGTH, 0);
+        long maxBodyReadTime = context.getLong(CustomizedHttpSourceConstants.MAX_BODY_READ_TIME, 0L);
+        if (maxBodySize <= 0) {
+            throw new IllegalArgumentException("maxBodySize must be positive");
+        }
+        if (maxInflatedSize <= 0) {
+            throw new IllegalArgumentException("maxInflatedSize must be positive");
+        }
+        if (maxEvents < 0 || maxHeaders < 0 || maxHeaderValueLength < 0 || maxBodyReadTime < 0) {
+            throw new IllegalArgumentException(
+                    "maxEvents, maxHeaders, maxHeaderValueLength and maxBodyReadTime must not be negative");
+        }
+        if (maxBodyReadTime > 0) {
+            Integer maxIdleTime = context.getInteger(CustomizedHttpSourceConstants.CONNECTOR_MAX_IDLE_TIME);
+            if (maxIdleTime == null || maxIdleTime > maxBodyReadTime) {
+                LOG.warn("A stalled client is only dropped after connector.maxIdleTime ({}), "
+                        + "set it no longer than maxBodyReadTime ({})",
+                        maxIdleTime == null ? "Jetty default" : maxIdleTime, maxBodyReadTime);
+            }
+        }
+        LOG.info("Init request limits: maxBodySize={}, maxInflatedSize={}, maxEvents={}, maxHeaders={}, "
+                        + "maxHeaderValueLength={}, maxBodyReadTime={}",
+                new Object[]{maxBodySize, maxInflatedSize, maxEvents, maxHeaders, maxHeaderValueLength,
+                        maxBodyReadTime});
+        return new RequestLimits(maxBodySize, maxInflatedSize, maxEvents, maxHeaders, maxHeaderValueLength,
+                maxBodyReadTime);
+    }
+
+    long getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    long getMaxInflatedSize() {
+        return maxInflatedSize;
+    }
+
+    /**
+     * @return the time by which the body must be read, compared with
+     * {@link System#nanoTime()}, or 0 when it is not limited
+     */
+    long bodyReadDeadline() {
+        if (maxBodyReadTimeNanos == 0) {
+            return 0;
+        }
+        long deadline = System.nanoTime() + maxBodyReadTimeNanos;
+        // 0 stands for no deadline
+        return deadline == 0 ? 1 : deadline;
+    }
+
+    /**
+     * Rejects the request announcing a body larger than <tt>maxBodySize</tt>.
+     */
+    void checkContentLength(HttpServletRequest request) throws RequestTooLargeException {
+        long length = request.getContentLength();
+        if (length > maxBodySize) {
+            throw new RequestTooLargeException(Reason.BODY_SIZE,
+                    "Content-Length " + length + " exceeds " + maxBodySize + " bytes");
+        }
+    }
+
+    /**
+     * Called with the number of events read so far.
+     */
+    void checkEvents(int count) throws RequestTooLargeException {
+        if (maxEvents > 0 && count > maxEvents) {
+            throw new RequestTooLargeException(Reason.EVENTS, "Request has more than " + maxEvents + " events");
+        }
+    }
+
+    /**
+     * Called with the number of headers of an event read so far.
+     */
+    void checkHeaders(int count) throws RequestTooLargeException {
+        if (maxHeaders > 0 && count > maxHeaders) {
+            throw new RequestTooLargeException(Reason.HEADERS, "Event has more than " + maxHeaders + " headers");
+        }
+    }
+
+    void checkHeaderValue(String value) throws RequestTooLargeException {
+        if (maxHeaderValueLength > 0 && value != null && value.length() > maxHeaderValueLength) {
+            throw new RequestTooLargeException(Reason.HEADER_VALUE_LENGTH,
+                    "Header value longer than " + maxHeaderValueLength + " characters");
+        }
+    }
+
+    /**
+     * Checks the headers of an event bound by Gson.
+     */
+    void checkHeaders(Map<String, String> headers) throws RequestTooLargeException {
+        if (headers == null) {
+            return;
+        }
+        checkHeaders(headers.size());
+        if (maxHeaderValueLength > 0) {
+            for (String value : headers.values()) {
+                checkHeaderValue(value);
+            }
+        }
+    }
+
+    /**
+     * Counts a rejected request.
+     */
+    void rejected(Reason reason) {
+        if (reason != null) {
+            rejected.incrementAndGet(reason.ordinal());
+        }
+    }
+
+    long getRejectedCount(Reason reason) {
+        return rejected.get(reason.ordinal());
+    }
+}
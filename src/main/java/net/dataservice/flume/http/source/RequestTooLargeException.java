@@ -0,0 +1,31 @@
+package net.dataservice.flume.http.source;
+
+import org.apache.flume.source.http.HTTPBadRequestException;
+
+/**
+ * Thrown while reading a request which exceeds one of the configured limits.
+ * {@linkplain CustomizedHttpSource} answers it with a HTTP 413 status, or a
+ * HTTP 408 status when the body was not read in time.
+ */
+public class RequestTooLargeException extends HTTPBadRequestException {
+
+    private static final long serialVersionUID = -3325167420431254185L;
+
+    private final RequestLimits.Reason reason;
+
+    public RequestTooLargeException(String message) {
+        this(null, message);
+    }
+
+    RequestTooLargeException(RequestLimits.Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    /**
+     * @return the exceeded limit, null if unknown
+     */
+    RequestLimits.Reason getReason() {
+        return reason;
+    }
+}
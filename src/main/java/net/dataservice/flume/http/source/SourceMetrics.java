@@ -0,0 +1,108 @@
+package net.dataservice.flume.http.source;
+
+import com.adaltas.flume.metrics.FlumeMetrics;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.apache.flume.Context;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The request metrics of a source, registered in the {@link FlumeMetrics}
+ * registry as <tt>source.&lt;name&gt;.*</tt>:
+ * <ul>
+ * <li><tt>parse</tt>: reading the events from the request body</li>
+ * <li><tt>enrichment</tt>: adding the request headers to the events and
+ * validating them</li>
+ * <li><tt>rejected</tt>: the events dropped by the header validation or
+ * without headers</li>
+ * <li><tt>events</tt>: the events per request</li>
+ * <li><tt>commit</tt>: putting the events into the channel, per
+ * transaction</li>
+ * <li><tt>response</tt>: writing the response</li>
+ * <li><tt>overloaded</tt>, <tt>rateLimited</tt>: the requests rejected by the
+ * {@link AdmissionController}</li>
+ * <li><tt>limit.&lt;reason&gt;</tt>: the requests aborted by the
+ * {@link RequestLimits}, per exceeded limit</li>
+ * </ul>
+ * The timers are updated once per request or transaction, not per event.
+ */
+final class SourceMetrics {
+    private final Timer parse;
+    private final Timer enrichment;
+    private final Meter rejected;
+    private final Histogram events;
+    private final Timer commit;
+    private final Timer response;
+    private final Meter overloaded;
+    private final Meter rateLimited;
+    private final Map<RequestLimits.Reason, Meter> limitExceeded =
+            new EnumMap<RequestLimits.Reason, Meter>(RequestLimits.Reason.class);
+
+    private SourceMetrics(MetricRegistry registry, String name) {
+        String prefix = MetricRegistry.name("source", name);
+        parse = registry.timer(MetricRegistry.name(prefix, "parse"));
+        enrichment = registry.timer(MetricRegistry.name(prefix, "enrichment"));
+        rejected = registry.meter(MetricRegistry.name(prefix, "rejected"));
+        events = registry.histogram(MetricRegistry.name(prefix, "events"));
+        commit = registry.timer(MetricRegistry.name(prefix, "commit"));
+        response = registry.timer(MetricRegistry.name(prefix, "response"));
+        overloaded = registry.meter(MetricRegistry.name(prefix, "overloaded"));
+        rateLimited = registry.meter(MetricRegistry.name(prefix, "rateLimited"));
+        for (RequestLimits.Reason reason : RequestLimits.Reason.values()) {
+            limitExceeded.put(reason, registry.meter(
+                    MetricRegistry.name(prefix, "limit", reason.name().toLowerCase(Locale.ENGLISH))));
+        }
+    }
+
+    /**
+     * Returns the metrics of the source, or null when <tt>metrics.enabled</tt>
+     * is false.
+     */
+    static SourceMetrics configure(String name, Context context) {
+        if (!FlumeMetrics.isEnabled(context)) {
+            return null;
+        }
+        FlumeMetrics.startReporter(context);
+        return new SourceMetrics(FlumeMetrics.registry(), name);
+    }
+
+    void parsed(long startNanos) {
+        parse.update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void enriched(long startNanos, int received, int accepted) {
+        enrichment.update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        events.update(accepted);
+        if (accepted < received) {
+            rejected.mark(received - accepted);
+        }
+    }
+
+    void committed(long startNanos) {
+        commit.update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void responded(long startNanos) {
+        response.update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void overloaded() {
+        overloaded.mark();
+    }
+
+    void rateLimited() {
+        rateLimited.mark();
+    }
+
+    void limitExceeded(RequestLimits.Reason reason) {
+        if (reason != null) {
+            limitExceeded.get(reason).mark();
+        }
+    }
+}
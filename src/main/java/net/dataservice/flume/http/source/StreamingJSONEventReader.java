@@ -0,0 +1,144 @@
+package net.dataservice.flume.http.source;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+import org.apache.flume.Event;
+import org.apache.flume.event.SimpleEvent;
+import org.apache.flume.source.http.HTTPBadRequestException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Token based reader for the JSON array accepted by {@link CustomizedJSONHandler}.
+ * <p>
+ * Events are built as {@link SimpleEvent}s while the array is read, so no
+ * intermediate {@code JSONEvent} list is created and the body is encoded only
+ * once, in the charset of the request. As with the Gson based parsing, events
+ * without a "headers" object are dropped and a missing body is read as an
+ * empty body. The event count and the headers are checked against the
+ * {@link RequestLimits} as they are read.
+ */
+class StreamingJSONEventReader {
+    private static final String HEADERS = "headers";
+    private static final String BODY = "body";
+    private static final byte[] EMPTY_BODY = new byte[0];
+
+    private final Charset charset;
+    private final RequestLimits limits;
+
+    StreamingJSONEventReader(Charset charset, RequestLimits limits) {
+        this.charset = charset;
+        this.limits = limits;
+    }
+
+    List<Event> readEvents(Reader reader) throws IOException {
+        JsonReader json = new JsonReader(reader);
+        // same leniency as Gson#fromJson
+        json.setLenient(true);
+        List<Event> events = new ArrayList<Event>();
+        try {
+            json.peek();
+        } catch (EOFException ex) {
+            // empty request body
+            return events;
+        } catch (MalformedJsonException ex) {
+            throw new HTTPBadRequestException("Request has invalid JSON Syntax.", ex);
+        }
+        try {
+            json.beginArray();
+            int read = 0;
+            while (json.hasNext()) {
+                // abort before reading one event too many
+                limits.checkEvents(++read);
+                Event event = readEvent(json);
+                if (event != null) {
+                    events.add(event);
+                }
+            }
+            json.endArray();
+            if (json.peek() != JsonToken.END_DOCUMENT) {
+                throw new HTTPBadRequestException("Request has invalid JSON Syntax. "
+                        + "Unexpected content after the event array.");
+            }
+        } catch (EOFException ex) {
+            throw new HTTPBadRequestException("Request has invalid JSON Syntax.", ex);
+        } catch (MalformedJsonException ex) {
+            throw new HTTPBadRequestException("Request has invalid JSON Syntax.", ex);
+        } catch (IllegalStateException ex) {
+            throw new HTTPBadRequestException("Request has invalid JSON Syntax.", ex);
+        } catch (NumberFormatException ex) {
+            throw new HTTPBadRequestException("Request has invalid JSON Syntax.", ex);
+        }
+        return events;
+    }
+
+    private Event readEvent(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return null;
+        }
+        Map<String, String> headers = null;
+        byte[] body = EMPTY_BODY;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (HEADERS.equals(name)) {
+                headers = readHeaders(json);
+            } else if (BODY.equals(name)) {
+                String value = readString(json);
+                body = value != null ? value.getBytes(charset) : EMPTY_BODY;
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+
+        if (headers == null) {
+            return null;
+        }
+        SimpleEvent event = new SimpleEvent();
+        event.setHeaders(headers);
+        event.setBody(body);
+        return event;
+    }
+
+    private Map<String, String> readHeaders(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return null;
+        }
+        Map<String, String> headers = new HashMap<String, String>();
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            String value = readString(json);
+            limits.checkHeaderValue(value);
+            headers.put(name, value);
+            limits.checkHeaders(headers.size());
+        }
+        json.endObject();
+        return headers;
+    }
+
+    private String readString(JsonReader json) throws IOException {
+        switch (json.peek()) {
+            case NULL:
+                json.nextNull();
+                return null;
+            case BOOLEAN:
+                return Boolean.toString(json.nextBoolean());
+            default:
+                // numbers are returned as written, objects and arrays are rejected
+                return json.nextString();
+        }
+    }
+}
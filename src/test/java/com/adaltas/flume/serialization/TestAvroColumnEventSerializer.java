@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.adaltas.flume.serialization;
+
+import com.google.common.base.Charsets;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.flume.Context;
+import org.apache.flume.event.EventBuilder;
+import org.apache.flume.serialization.EventSerializer;
+import org.apache.flume.serialization.EventSerializerFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestAvroColumnEventSerializer {
+
+	private List<GenericRecord> serialize(Context context, int events) throws IOException {
+		ByteArrayOutputStream serializedOutput = new ByteArrayOutputStream();
+		EventSerializer serializer =
+				EventSerializerFactory.getInstance(
+						"com.adaltas.flume.serialization.AvroColumnEventSerializer$Builder",
+						context,
+						serializedOutput
+				);
+		serializer.afterCreate();
+		for (int i = 0; i < events; i++) {
+			Map<String, String> headers = new HashMap<String, String>();
+			headers.put("host", "host" + i);
+			if (i % 2 == 0) {
+				headers.put("user-id", "user" + i);
+			}
+			serializer.write(EventBuilder.withBody("{\"cpu\": " + i + "}", Charsets.UTF_8, headers));
+			if (i % 10 == 9) {
+				serializer.flush();
+			}
+		}
+		serializer.beforeClose();
+
+		DataFileStream<GenericRecord> reader = new DataFileStream<GenericRecord>(
+				new ByteArrayInputStream(serializedOutput.toByteArray()),
+				new GenericDatumReader<GenericRecord>());
+		List<GenericRecord> records = new ArrayList<GenericRecord>();
+		while (reader.hasNext()) {
+			records.add(reader.next());
+		}
+		reader.close();
+		return records;
+	}
+
+	@Test
+	public void testColumns() throws IOException {
+		Context context = new Context();
+		context.put("columns", "host user-id body");
+		List<GenericRecord> records = serialize(context, 25);
+		Assert.assertEquals(25, records.size());
+		Assert.assertEquals("host3", records.get(3).get("host").toString());
+		Assert.assertNull(records.get(3).get("user_id"));
+		Assert.assertEquals("user4", records.get(4).get("user_id").toString());
+		Assert.assertEquals("{\"cpu\": 24}", records.get(24).get("body").toString());
+	}
+
+	@Test
+	public void testJsonBody() throws IOException {
+		Context context = new Context();
+		context.put("columns", "host cpu");
+		context.put("jsonBody", "true");
+		context.put("compressionCodec", "deflate");
+		List<GenericRecord> records = serialize(context, 12);
+		Assert.assertEquals(12, records.size());
+		Assert.assertEquals("host7", records.get(7).get("host").toString());
+		Assert.assertEquals("7", records.get(7).get("cpu").toString());
+	}
+
+	@Test
+	public void testJsonBodyWithBodyColumn() throws IOException {
+		Context context = new Context();
+		context.put("columns", "host body cpu user-id");
+		context.put("jsonBody", "true");
+		List<GenericRecord> records = serialize(context, 12);
+		Assert.assertEquals(12, records.size());
+		Assert.assertEquals("host5", records.get(5).get("host").toString());
+		Assert.assertEquals("{\"cpu\": 5}", records.get(5).get("body").toString());
+		Assert.assertEquals("5", records.get(5).get("cpu").toString());
+		Assert.assertNull(records.get(5).get("user_id"));
+		Assert.assertEquals("user6", records.get(6).get("user_id").toString());
+
+		Assert.assertEquals(Arrays.asList("host", "cpu", "user-id"), Arrays.asList(
+				AvroColumnEventSerializer.withoutColumn(new String[] {"host", "body", "cpu", "user-id"}, 1)));
+	}
+
+	@Test
+	public void testFieldNames() {
+		String[] names = AvroColumnEventSerializer.fieldNames(
+				new String[] {"host", "user-id", "user_id", "1st", "Data[*].Value", ""});
+		Assert.assertEquals(Arrays.asList("host", "user_id", "user_id_2", "_1st", "Data____Value", "_"),
+				Arrays.asList(names));
+
+		Schema schema = AvroColumnEventSerializer.createSchema(new String[] {"host", "user-id"});
+		Assert.assertEquals("user-id", schema.getField("user_id").doc());
+		Assert.assertNull(schema.getField("host").doc());
+	}
+
+	@Test
+	public void testReopen() throws IOException {
+		Context context = new Context();
+		context.put("columns", "host");
+		EventSerializer serializer = new AvroColumnEventSerializer.Builder().build(context, new ByteArrayOutputStream());
+		Assert.assertFalse(serializer.supportsReopen());
+		try {
+			serializer.afterReopen();
+			Assert.fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWithoutColumns() {
+		new AvroColumnEventSerializer.Builder().build(new Context(), new ByteArrayOutputStream());
+	}
+}
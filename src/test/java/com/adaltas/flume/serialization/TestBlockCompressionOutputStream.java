@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.adaltas.flume.serialization;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import net.jpountz.lz4.LZ4Factory;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.flume.Context;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xerial.snappy.Snappy;
+
+public class TestBlockCompressionOutputStream {
+
+    private static byte[] input(int length) {
+        byte[] input = new byte[length];
+        Random random = new Random(42);
+        for (int i = 0; i < length; i++) {
+            input[i] = (byte) ('a' + random.nextInt(4));
+        }
+        return input;
+    }
+
+    private static BlockCompressionOutputStream open(String codec, int blockSize, ByteArrayOutputStream out) {
+        Context context = new Context();
+        context.put("compression", codec);
+        context.put("compression.blockSize", String.valueOf(blockSize));
+        return BlockCompressionOutputStream.configure(out, context);
+    }
+
+    /**
+     * Writes the input with single bytes, small and large arrays and flushes
+     * in the middle.
+     */
+    private static byte[] compress(String codec, int blockSize, byte[] input) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BlockCompressionOutputStream stream = open(codec, blockSize, out);
+        stream.write(input[0]);
+        stream.write(input, 1, 99);
+        stream.flush();
+        stream.write(input, 100, 3000);
+        stream.write(input, 3100, input.length - 3100);
+        stream.finish();
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads the blocks framed like the Hadoop block codecs.
+     */
+    private static byte[] readBlocks(String codec, byte[] compressed) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(compressed));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        while (in.available() > 0) {
+            byte[] block = new byte[in.readInt()];
+            byte[] chunk = new byte[in.readInt()];
+            in.readFully(chunk);
+            if (codec.equals("snappy")) {
+                Snappy.uncompress(chunk, 0, chunk.length, block, 0);
+            } else {
+                LZ4Factory.fastestInstance().fastDecompressor().decompress(chunk, block);
+            }
+            out.write(block);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testNone() {
+        Assert.assertNull(open("none", 1024, new ByteArrayOutputStream()));
+    }
+
+    @Test
+    public void testGzip() throws IOException {
+        byte[] input = input(10000);
+        byte[] compressed = compress("gzip", 1024, input);
+        byte[] output = IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed)));
+        Assert.assertTrue(Arrays.equals(input, output));
+    }
+
+    @Test
+    public void testSnappy() throws IOException {
+        byte[] input = input(10000);
+        Assert.assertTrue(Arrays.equals(input, readBlocks("snappy", compress("snappy", 1024, input))));
+    }
+
+    @Test
+    public void testLz4() throws IOException {
+        byte[] input = input(10000);
+        Assert.assertTrue(Arrays.equals(input, readBlocks("lz4", compress("lz4", 1024, input))));
+    }
+
+    @Test
+    public void testFlushWritesCompleteBlocks() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BlockCompressionOutputStream stream = open("gzip", 1024, out);
+        stream.write(input(100));
+        Assert.assertEquals(0, out.size());
+        stream.flush();
+        byte[] first = out.toByteArray();
+        Assert.assertEquals(100, IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(first))).length);
+        stream.finish();
+        Assert.assertEquals(first.length, out.size());
+    }
+
+    @Test
+    public void testCounter() throws IOException {
+        CompressionCounter counter = CompressionCounter.forCodec("lz4");
+        long blocks = counter.getBlockCount();
+        long bytesIn = counter.getBytesIn();
+        long bytesOut = counter.getBytesOut();
+        byte[] compressed = compress("lz4", 1024, input(10000));
+        Assert.assertEquals(blocks + 11, counter.getBlockCount());
+        Assert.assertEquals(bytesIn + 10000, counter.getBytesIn());
+        Assert.assertEquals(bytesOut + compressed.length, counter.getBytesOut());
+        Assert.assertTrue(counter.getCompressionRatio() > 1);
+        Assert.assertTrue(counter.getThroughputBytesPerSecond() > 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownCodec() {
+        open("zstd", 1024, new ByteArrayOutputStream());
+    }
+}
@@ -0,0 +1,47 @@
+package com.adaltas.flume.serialization;
+
+import com.google.common.base.Charsets;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+public class TestCsvEncoder {
+
+    private static String encode(char delimiter, int bufferSize, Object... fields) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OutputBuffer buffer = new OutputBuffer(out, bufferSize);
+        CsvEncoder encoder = new CsvEncoder(buffer, delimiter);
+        for (Object field : fields) {
+            if (field instanceof byte[]) {
+                encoder.writeField((byte[]) field);
+            } else {
+                encoder.writeField((String) field);
+            }
+        }
+        encoder.endRow();
+        buffer.flush();
+        return new String(out.toByteArray(), Charsets.UTF_8);
+    }
+
+    @Test
+    public void testQuoting() throws IOException {
+        Assert.assertEquals("\"a\",\"\",,\"say \"\"hi\"\"\",\"x,y\nz\"\n",
+                encode(',', 1024, "a", "", null, "say \"hi\"", "x,y\nz"));
+    }
+
+    @Test
+    public void testByteFields() throws IOException {
+        Assert.assertEquals("\"h\"\t\"\"\"body\"\" \u00e9\"\n",
+                encode('\t', 1024, "h", "\"body\" \u00e9".getBytes(Charsets.UTF_8)));
+    }
+
+    @Test
+    public void testUtf8() throws IOException {
+        String value = "\u00e9\u20ac\ud83d\ude00";
+        for (int bufferSize : new int[]{0, 3, 1024}) {
+            Assert.assertEquals("\"" + value + "\"\u00a7\"?\"\n", encode('\u00a7', bufferSize, value, "\ud83d"));
+        }
+    }
+}
@@ -19,6 +19,7 @@
 package com.adaltas.flume.serialization;
 
 import com.google.common.base.Charsets;
+import com.google.common.io.Files;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -27,9 +28,15 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import com.adaltas.flume.metrics.FlumeMetrics;
+import com.codahale.metrics.MetricRegistry;
 
 import org.apache.flume.Context;
+import org.apache.flume.Event;
 import org.apache.flume.event.EventBuilder;
 import org.apache.flume.serialization.EventSerializer;
 import org.apache.flume.serialization.EventSerializerFactory;
@@ -144,6 +151,144 @@ public class TestHeaderAndBodyTextEventSerializer {
 		reader.close();
 	}
 
+	@Test
+	public void testNativeWithDuplicateAndMissingColumns() throws FileNotFoundException, IOException {
+		Context context = new Context();
+		context.put("columns", "header2 header75 header2 header1");
+		serializeWithContext(context, false, 3, null);
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(storedOutput));
+		Assert.assertEquals("{header2=value2, header75=null, header1=value1} event 1", reader.readLine());
+		Assert.assertEquals("{header2=value2, header75=null, header1=value1} event 2", reader.readLine());
+		Assert.assertEquals("{header2=value2, header75=null, header1=value1} event 3", reader.readLine());
+		Assert.assertNull(reader.readLine());
+		reader.close();
+	}
+
+	@Test
+	public void testCSVWithJsonBodyColumns() throws FileNotFoundException, IOException {
+		Context context = new Context();
+		context.put("format", "CSV");
+		context.put("columns", "header1 MachineId InstalledRam Data header75 ComputerName");
+		context.put("delimiter", ",");
+		context.put("jsonBody", "true");
+		ByteArrayOutputStream serializedOutput = new ByteArrayOutputStream();
+		EventSerializer serializer =
+				EventSerializerFactory.getInstance(
+						"com.adaltas.flume.serialization.HeaderAndBodyTextEventSerializer$Builder",
+						context,
+						serializedOutput
+				);
+		Map<String, String> headers = new HashMap<String, String>();
+		headers.put("header1", "value1");
+		headers.put("ComputerName", "header wins");
+		byte[] widget = Files.toByteArray(new File("src/test/resources/schema/example-widget.json"));
+		serializer.write(EventBuilder.withBody(widget, headers));
+		serializer.write(EventBuilder.withBody("not json", Charsets.UTF_8, headers));
+		serializer.flush();
+		serializer.beforeClose();
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new ByteArrayInputStream(serializedOutput.toByteArray())));
+		Assert.assertEquals("\"value1\",\"dcfd2e53-f75c-4c9b-85bd-e320edcffb29\",\"16384\",\"\",\"\",\"header wins\"",
+				reader.readLine());
+		Assert.assertEquals("\"value1\",\"\",\"\",\"\",\"\",\"header wins\"", reader.readLine());
+		Assert.assertNull(reader.readLine());
+		reader.close();
+	}
+
+	@Test
+	public void testCSVExplodedJsonBodyColumns() throws FileNotFoundException, IOException {
+		Context context = new Context();
+		context.put("format", "CSV");
+		context.put("columns", "header1 Data[*].SampleDate Data[*].Properties.CPU.Value");
+		context.put("delimiter", ",");
+		context.put("jsonBody", "true");
+		context.put("explode", "true");
+		ByteArrayOutputStream serializedOutput = new ByteArrayOutputStream();
+		EventSerializer serializer =
+				EventSerializerFactory.getInstance(
+						"com.adaltas.flume.serialization.HeaderAndBodyTextEventSerializer$Builder",
+						context,
+						serializedOutput
+				);
+		Map<String, String> headers = new HashMap<String, String>();
+		headers.put("header1", "value1");
+		byte[] widget = Files.toByteArray(new File("src/test/resources/schema/example-widget.json"));
+		serializer.write(EventBuilder.withBody(widget, headers));
+		serializer.flush();
+		serializer.beforeClose();
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new ByteArrayInputStream(serializedOutput.toByteArray())));
+		Assert.assertEquals("\"value1\",\"2015-05-13T16:23:49.7502134+02:00\",\"23\"", reader.readLine());
+		Assert.assertEquals("\"value1\",\"2015-05-13T16:23:44.7502134+02:00\",\"23\"", reader.readLine());
+		Assert.assertNull(reader.readLine());
+		reader.close();
+	}
+
+	@Test
+	public void testOutputIsBufferedUntilFlush() throws IOException {
+		for (String format : new String[]{"NATIVE", "CSV"}) {
+			Context context = new Context();
+			context.put("format", format);
+			ByteArrayOutputStream serializedOutput = new ByteArrayOutputStream();
+			EventSerializer serializer =
+					EventSerializerFactory.getInstance(
+							"com.adaltas.flume.serialization.HeaderAndBodyTextEventSerializer$Builder",
+							context,
+							serializedOutput
+					);
+			serializer.write(EventBuilder.withBody("event 1", Charsets.UTF_8, new HashMap<String, String>()));
+			Assert.assertEquals(0, serializedOutput.size());
+			serializer.flush();
+			Assert.assertTrue(serializedOutput.size() > 0);
+			int flushed = serializedOutput.size();
+			serializer.write(EventBuilder.withBody("event 2", Charsets.UTF_8, new HashMap<String, String>()));
+			serializer.beforeClose();
+			Assert.assertEquals(2 * flushed, serializedOutput.size());
+		}
+	}
+
+	@Test
+	public void testBufferIsDrainedAtHighWaterMark() throws IOException {
+		Context context = new Context();
+		context.put("bufferSize", "16");
+		ByteArrayOutputStream serializedOutput = new ByteArrayOutputStream();
+		EventSerializer serializer =
+				EventSerializerFactory.getInstance(
+						"com.adaltas.flume.serialization.HeaderAndBodyTextEventSerializer$Builder",
+						context,
+						serializedOutput
+				);
+		serializer.write(EventBuilder.withBody("event 1", Charsets.UTF_8, new HashMap<String, String>()));
+		serializer.write(EventBuilder.withBody("event 2", Charsets.UTF_8, new HashMap<String, String>()));
+		serializer.write(EventBuilder.withBody("event 3", Charsets.UTF_8, new HashMap<String, String>()));
+		Assert.assertTrue(serializedOutput.size() > 0);
+		serializer.flush();
+		Assert.assertEquals("{} event 1\n{} event 2\n{} event 3\n", serializedOutput.toString("UTF-8"));
+	}
+
+	@Test
+	public void testNativeMatchesMapToString() throws IOException {
+		Map<String, String> headers = new LinkedHashMap<String, String>();
+		headers.put("a", "1");
+		headers.put("empty", null);
+		headers.put("caf\u00e9", "\u20ac \"x=y\", {z}");
+		ByteArrayOutputStream serializedOutput = new ByteArrayOutputStream();
+		EventSerializer serializer =
+				EventSerializerFactory.getInstance(
+						"com.adaltas.flume.serialization.HeaderAndBodyTextEventSerializer$Builder",
+						new Context(),
+						serializedOutput
+				);
+		Event event = EventBuilder.withBody("body", Charsets.UTF_8, headers);
+		serializer.write(event);
+		serializer.flush();
+		Assert.assertEquals(event.getHeaders() + " body\n",
+				new String(serializedOutput.toByteArray(), Charsets.UTF_8));
+	}
+
 	@Test
 	public void testCSVWithAlternativeDelimiter() throws FileNotFoundException, IOException {
 		Context context = new Context();
@@ -175,4 +320,48 @@ public class TestHeaderAndBodyTextEventSerializer {
 		reader.close();	
 	}
 
+	@Test
+	public void testGzipCompression() throws IOException {
+		Context context = new Context();
+		context.put("format", "CSV");
+		context.put("compression", "gzip");
+		context.put("compression.blockSize", "16");
+		serializeWithContext(context, false, 2, null);
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(storedOutput)));
+		Assert.assertEquals("\"value2\"\t\"value1\"\t\"event 1\"", reader.readLine());
+		Assert.assertEquals("\"value2\"\t\"value1\"\t\"event 2\"", reader.readLine());
+		Assert.assertEquals("\"value2\"\t\"value1\"\t\"event 3\"", reader.readLine());
+		Assert.assertNull(reader.readLine());
+		reader.close();
+	}
+
+	@Test
+	public void testMetrics() throws IOException {
+		MetricRegistry registry = FlumeMetrics.registry();
+		long events = registry.meter("serializer.text.events").getCount();
+		long bytesIn = registry.meter("serializer.text.bytes.in").getCount();
+		long bytesOut = registry.meter("serializer.text.bytes.out").getCount();
+		long sampled = registry.timer("serializer.text.write").getCount();
+		Context context = new Context();
+		context.put("metrics.sampleInterval", "2");
+		serializeWithContext(context, false, 2, "abc");
+
+		Assert.assertEquals(4, registry.meter("serializer.text.events").getCount() - events);
+		Assert.assertEquals(24, registry.meter("serializer.text.bytes.in").getCount() - bytesIn);
+		Assert.assertEquals(storedOutput.available(),
+				registry.meter("serializer.text.bytes.out").getCount() - bytesOut);
+		Assert.assertEquals(2, registry.timer("serializer.text.write").getCount() - sampled);
+	}
+
+	@Test
+	public void testMetricsDisabled() throws IOException {
+		MetricRegistry registry = FlumeMetrics.registry();
+		long events = registry.meter("serializer.text.events").getCount();
+		Context context = new Context();
+		context.put("metrics.enabled", "false");
+		serializeWithContext(context, false, 2, null);
+		Assert.assertEquals(events, registry.meter("serializer.text.events").getCount());
+	}
+
 }
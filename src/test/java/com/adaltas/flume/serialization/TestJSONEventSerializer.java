@@ -20,6 +20,7 @@ package com.adaltas.flume.serialization;
 
 import com.google.common.base.Charsets;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -104,4 +105,67 @@ public class TestJSONEventSerializer {
 		FileUtils.forceDelete(testFile);
   }
 
+  @Test
+  public void testBodyHeaderAndNullValues() throws IOException {
+    Map<String, String> headers = new HashMap<String, String>();
+    headers.put("body", "from header <b>");
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    EventSerializer serializer =
+        EventSerializerFactory.getInstance("com.adaltas.flume.serialization.JSONEventSerializer$Builder",
+            new Context(), out);
+    serializer.write(EventBuilder.withBody("event 1", Charsets.UTF_8, headers));
+    Context context = new Context();
+    context.put("columns", "missing body header1");
+    EventSerializer columnSerializer =
+        EventSerializerFactory.getInstance("com.adaltas.flume.serialization.JSONEventSerializer$Builder",
+            context, out);
+    headers.put("header1", "value1");
+    columnSerializer.write(EventBuilder.withBody("event \"2\"", Charsets.UTF_8, headers));
+    serializer.beforeClose();
+    columnSerializer.beforeClose();
+
+    Assert.assertEquals("{\"body\":\"from header \\u003cb\\u003e\"}\n"
+        + "{\"body\":\"event \\\"2\\\"\",\"header1\":\"value1\"}\n", out.toString("UTF-8"));
+  }
+
+  private static String serialize(Context context, Map<String, String> headers, String... bodies)
+      throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    EventSerializer serializer =
+        EventSerializerFactory.getInstance("com.adaltas.flume.serialization.JSONEventSerializer$Builder",
+            context, out);
+    for (String body : bodies) {
+      serializer.write(EventBuilder.withBody(body, Charsets.UTF_8, headers));
+    }
+    serializer.beforeClose();
+    return out.toString("UTF-8");
+  }
+
+  @Test
+  public void testObjectBodyFormat() throws IOException {
+    Map<String, String> headers = new HashMap<String, String>();
+    headers.put("header1", "value1");
+    Context context = new Context();
+    context.put("bodyFormat", "object");
+    Assert.assertEquals("{\"body\":{\"a\": [1, 2]},\"header1\":\"value1\"}\n"
+        + "{\"body\":\"{not json\",\"header1\":\"value1\"}\n",
+        serialize(context, headers, " {\"a\": [1,\r\n 2]}\n", "{not json"));
+  }
+
+  @Test
+  public void testMergeBodyFormat() throws IOException {
+    Map<String, String> headers = new HashMap<String, String>();
+    headers.put("header1", "value1");
+    Context context = new Context();
+    context.put("bodyFormat", "merge");
+    Assert.assertEquals("{\"a\":1,\"b\":{\"c\":\"d\"},\"header1\":\"value1\"}\n"
+        + "{\"body\":\"[1]\",\"header1\":\"value1\"}\n",
+        serialize(context, headers, "{\"a\":1,\"header1\":\"body\",\"b\":{\"c\":\"d\"},\"head\\u0065r1\":2}", "[1]"));
+
+    context.put("columns", "header1 body missing");
+    Assert.assertEquals("{\"header1\":\"value1\",\"a\":1,\"missing\":true}\n",
+        serialize(context, headers, "{\"a\":1,\"header1\":\"body\",\"missing\":true}"));
+  }
+
 }
@@ -0,0 +1,71 @@
+package com.adaltas.flume.serialization;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class TestJsonBodyExtractor {
+
+    private static byte[] widget() throws IOException {
+        return Files.toByteArray(new File("src/test/resources/schema/example-widget.json"));
+    }
+
+    @Test
+    public void testPaths() throws IOException {
+        String[] columns = {"MachineId", "$.InstalledRam", "Data[0].Properties.CPU.Value",
+                "Data[1].SampleDate", "Data[*].SampleDate", "Data[0]", "Data[5].SampleDate", "Missing.Field"};
+        JsonBodyExtractor extractor = new JsonBodyExtractor(columns);
+        String[] row = new String[columns.length];
+        Assert.assertEquals(0, extractor.extract(widget(), row));
+        Assert.assertEquals(Arrays.asList("dcfd2e53-f75c-4c9b-85bd-e320edcffb29", "16384", "23",
+                "2015-05-13T16:23:44.7502134+02:00",
+                "2015-05-13T16:23:49.7502134+02:00,2015-05-13T16:23:44.7502134+02:00",
+                null, null, null), Arrays.asList(row));
+    }
+
+    @Test
+    public void testHeaderValuesAreKept() throws IOException {
+        JsonBodyExtractor extractor = new JsonBodyExtractor(new String[]{"MachineId", "User"});
+        String[] row = {"from header", null};
+        extractor.extract(widget(), row);
+        Assert.assertEquals(Arrays.asList("from header", "CAISSA\\Josevi"), Arrays.asList(row));
+    }
+
+    @Test
+    public void testExplode() throws IOException {
+        String[] columns = {"MachineId", "Data[*].SampleDate", "Data[*].Properties.UsedRAM.Value", "Data[1].State"};
+        JsonBodyExtractor extractor = new JsonBodyExtractor(columns, true);
+        String[] row = new String[columns.length];
+        Assert.assertEquals(2, extractor.extract(widget(), row));
+        Assert.assertEquals(Arrays.asList("dcfd2e53-f75c-4c9b-85bd-e320edcffb29",
+                "2015-05-13T16:23:49.7502134+02:00", "2789", "37"), Arrays.asList(extractor.explodedRow(0)));
+        Assert.assertEquals("2015-05-13T16:23:44.7502134+02:00", extractor.explodedRow(1)[1]);
+
+        row = new String[columns.length];
+        Assert.assertEquals(0, extractor.extract("{\"MachineId\": \"m\", \"Data\": []}".getBytes(Charsets.UTF_8), row));
+        Assert.assertEquals(Arrays.asList("m", null, null, null), Arrays.asList(row));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testExplodeDifferentArrays() {
+        new JsonBodyExtractor(new String[]{"Data[*].SampleDate", "Other[*].Value"}, true);
+    }
+
+    @Test
+    public void testParse() {
+        Assert.assertEquals(Arrays.<Object>asList("a.b"), JsonBodyExtractor.parse("['a.b']").subList(0, 1));
+        Assert.assertEquals(Arrays.<Object>asList("Data", 0, "Properties"),
+                JsonBodyExtractor.parse("Data[0].Properties"));
+        try {
+            JsonBodyExtractor.parse("Data[x]");
+            Assert.fail("Invalid index accepted");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.adaltas.flume.serialization;
+
+import com.google.common.base.Charsets;
+import com.google.gson.Gson;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+public class TestJsonEncoder {
+
+  private static final String[] VALUES = {
+      "", "plain", "quote \" backslash \\ slash /", "<a href='x'>&amp;</a> a=b",
+      "\t\b\n\r\f \u0000 \u001f \u007f", "caf\u00e9 \u20ac \ud83d\ude00", "line\u2028paragraph\u2029",
+      "unpaired \ud83d surrogate"};
+
+  private static byte[] encode(byte[] utf8, int bufferSize) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    OutputBuffer buffer = new OutputBuffer(out, bufferSize);
+    new JsonEncoder(buffer).writeString(utf8);
+    buffer.flush();
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testStringsMatchGson() throws IOException {
+    Gson gson = new Gson();
+    for (String value : VALUES) {
+      // compared encoded, an unpaired surrogate is written as '?'
+      Assert.assertEquals(new String(gson.toJson(value).getBytes(Charsets.UTF_8), Charsets.UTF_8),
+          new String(JsonEncoder.encode(value), Charsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void testBytesMatchGson() throws IOException {
+    Gson gson = new Gson();
+    for (String value : VALUES) {
+      byte[] utf8 = value.getBytes(Charsets.UTF_8);
+      for (int bufferSize : new int[]{0, 4, 1024}) {
+        Assert.assertEquals(gson.toJson(new String(utf8, Charsets.UTF_8)),
+            new String(encode(utf8, bufferSize), Charsets.UTF_8));
+      }
+    }
+    byte[] invalid = {'a', (byte) 0xc3, '"', (byte) 0xff, (byte) 0xe2, (byte) 0x80};
+    Assert.assertEquals(gson.toJson(new String(invalid, Charsets.UTF_8)),
+        new String(encode(invalid, 1024), Charsets.UTF_8));
+  }
+
+  @Test
+  public void testIsValidUtf8() {
+    Assert.assertTrue(JsonEncoder.isValidUtf8("caf\u00e9 \u20ac \ud83d\ude00".getBytes(Charsets.UTF_8)));
+    Assert.assertFalse(JsonEncoder.isValidUtf8(new byte[]{(byte) 0xc0, (byte) 0x80}));
+    Assert.assertFalse(JsonEncoder.isValidUtf8(new byte[]{(byte) 0xed, (byte) 0xa0, (byte) 0x80}));
+    Assert.assertFalse(JsonEncoder.isValidUtf8(new byte[]{(byte) 0xe2, (byte) 0x82}));
+  }
+}
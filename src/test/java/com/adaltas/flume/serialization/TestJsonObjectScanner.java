@@ -0,0 +1,55 @@
+package com.adaltas.flume.serialization;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+public class TestJsonObjectScanner {
+
+  private static boolean scan(String json) {
+    return new JsonObjectScanner().scan(json.getBytes(Charsets.UTF_8));
+  }
+
+  @Test
+  public void testValidObjects() throws IOException {
+    Assert.assertTrue(scan("{}"));
+    Assert.assertTrue(scan(" {\"a\": [1, -2.5e+3, true, false, null, {\"b\": \"\\u00e9\\n\"}]}\n"));
+    Assert.assertTrue(new JsonObjectScanner().scan(
+        Files.toByteArray(new File("src/test/resources/schema/example-widget.json"))));
+  }
+
+  @Test
+  public void testInvalidBodies() throws IOException {
+    for (String json : new String[]{"", "[]", "\"a\"", "{", "{\"a\"}", "{\"a\": 1,}", "{\"a\": tru}",
+        "{\"a\": 01}", "{\"a\": \"\\x\"}", "{\"a\": \"tab\there\"}", "{} {}", "{\"a\": [1}", "plain text"}) {
+      Assert.assertFalse(json, scan(json));
+    }
+    Assert.assertFalse(new JsonObjectScanner().scan(
+        Files.toByteArray(new File("src/test/resources/schema/example-widget-invalid.json"))));
+    StringBuilder deep = new StringBuilder("{\"a\":");
+    for (int i = 0; i < JsonObjectScanner.MAX_DEPTH + 1; i++) {
+      deep.append('[');
+    }
+    for (int i = 0; i < JsonObjectScanner.MAX_DEPTH + 1; i++) {
+      deep.append(']');
+    }
+    Assert.assertFalse(scan(deep.append('}').toString()));
+  }
+
+  @Test
+  public void testMembers() {
+    String json = " {\"a\" : 1, \"b\":{\"c\":[2]} } ";
+    JsonObjectScanner scanner = new JsonObjectScanner();
+    Assert.assertTrue(scanner.scan(json.getBytes(Charsets.UTF_8)));
+    Assert.assertEquals(1, scanner.getObjectStart());
+    Assert.assertEquals(json.length() - 1, scanner.getObjectEnd());
+    Assert.assertEquals(2, scanner.getMemberCount());
+    Assert.assertEquals("\"a\" : 1", json.substring(scanner.getKeyStart(0), scanner.getValueEnd(0)));
+    Assert.assertEquals("\"b\"", json.substring(scanner.getKeyStart(1), scanner.getKeyEnd(1)));
+    Assert.assertEquals("\"b\":{\"c\":[2]}", json.substring(scanner.getKeyStart(1), scanner.getValueEnd(1)));
+  }
+}
@@ -0,0 +1,129 @@
+package net.dataservice.flume.http.source;
+
+import org.apache.flume.Context;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestAdmissionController {
+
+    private static HttpServletRequest request(String remoteAddr, String forwardedFor) {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getRemoteAddr()).thenReturn(remoteAddr);
+        when(request.getHeader("X-Forwarded-For")).thenReturn(forwardedFor);
+        return request;
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        Assert.assertNull(AdmissionController.configure(new Context()));
+    }
+
+    @Test
+    public void testRateLimit() throws Exception {
+        Context context = new Context();
+        context.put(CustomizedHttpSourceConstants.RATE_LIMIT_REQUESTS_PER_SECOND, "0.001");
+        context.put(CustomizedHttpSourceConstants.RATE_LIMIT_BURST, "2");
+        AdmissionController admission = AdmissionController.configure(context);
+        admission.start(null, null, null);
+
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        Assert.assertTrue(admission.admit(request("10.0.0.1", null), response));
+        Assert.assertTrue(admission.admit(request("10.0.0.1", null), response));
+        verify(response, never()).sendError(anyInt(), anyString());
+        Assert.assertTrue(admission.admit(request("10.0.0.2", null), response));
+
+        Assert.assertFalse(admission.admit(request("10.0.0.1", null), response));
+        verify(response).setHeader("Retry-After", "1000");
+        verify(response).sendError(anyInt(), anyString());
+    }
+
+    @Test
+    public void testRateLimitForwardedFor() throws Exception {
+        Context context = new Context();
+        context.put(CustomizedHttpSourceConstants.RATE_LIMIT_REQUESTS_PER_SECOND, "0.001");
+        context.put(CustomizedHttpSourceConstants.RATE_LIMIT_BURST, "1");
+        context.put(CustomizedHttpSourceConstants.RATE_LIMIT_FORWARDED_FOR, "true");
+        AdmissionController admission = AdmissionController.configure(context);
+        admission.start(null, null, null);
+
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        Assert.assertTrue(admission.admit(request("10.0.0.1", "192.168.0.1, 10.0.0.1"), response));
+        Assert.assertTrue(admission.admit(request("10.0.0.1", "192.168.0.2"), response));
+        Assert.assertFalse(admission.admit(request("10.0.0.3", "192.168.0.1"), response));
+    }
+
+    @Test
+    public void testTokenBucket() throws Exception {
+        AdmissionController.TokenBucket bucket = new AdmissionController.TokenBucket(1);
+        long now = System.nanoTime();
+        Assert.assertEquals(0, bucket.tryAcquire(now, 10, 1));
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.tryAcquire(now, 10, 1));
+        Assert.assertEquals(0, bucket.tryAcquire(now + TimeUnit.MILLISECONDS.toNanos(100), 10, 1));
+    }
+
+    @Test
+    public void testChannelFull() throws Exception {
+        Context context = new Context();
+        context.put(CustomizedHttpSourceConstants.ADMISSION_ENABLED, "true");
+        context.put(CustomizedHttpSourceConstants.ADMISSION_REFRESH_INTERVAL, "60000");
+        context.put(CustomizedHttpSourceConstants.ADMISSION_RETRY_AFTER, "5");
+        AdmissionController admission = AdmissionController.configure(context);
+        admission.start(null, null, null);
+
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        Assert.assertTrue(admission.admit(request("10.0.0.1", null), response));
+        admission.channelFull();
+        Assert.assertFalse(admission.admit(request("10.0.0.1", null), response));
+        verify(response).setHeader("Retry-After", "5");
+        verify(response).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Source overloaded. Retry later.");
+    }
+
+    @Test
+    public void testCommitLatency() throws Exception {
+        Context context = new Context();
+        context.put(CustomizedHttpSourceConstants.ADMISSION_ENABLED, "true");
+        context.put(CustomizedHttpSourceConstants.ADMISSION_MAX_COMMIT_LATENCY, "100");
+        AdmissionController admission = AdmissionController.configure(context);
+        admission.start(null, null, null);
+
+        admission.committed(System.nanoTime());
+        Assert.assertFalse(admission.isOverloaded());
+        for (int i = 0; i < 20; i++) {
+            admission.committed(System.nanoTime() - TimeUnit.SECONDS.toNanos(1));
+        }
+        Assert.assertTrue(admission.isOverloaded());
+    }
+
+    @Test
+    public void testCommitLatencyRecovers() throws Exception {
+        Context context = new Context();
+        context.put(CustomizedHttpSourceConstants.ADMISSION_ENABLED, "true");
+        context.put(CustomizedHttpSourceConstants.ADMISSION_MAX_COMMIT_LATENCY, "100");
+        context.put(CustomizedHttpSourceConstants.ADMISSION_REFRESH_INTERVAL, "10");
+        AdmissionController admission = AdmissionController.configure(context);
+        admission.start(null, null, null);
+
+        admission.committed(System.nanoTime() - TimeUnit.SECONDS.toNanos(1));
+        Assert.assertTrue(admission.isOverloaded());
+        // no commit while the requests are rejected, the average decays
+        long deadline = System.currentTimeMillis() + 5000;
+        while (admission.isOverloaded()) {
+            Assert.assertTrue("Still overloaded without commits", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        // fast commits keep the source admitted
+        admission.committed(System.nanoTime());
+        Assert.assertFalse(admission.isOverloaded());
+    }
+}
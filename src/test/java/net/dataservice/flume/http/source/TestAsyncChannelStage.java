@@ -0,0 +1,135 @@
+package net.dataservice.flume.http.source;
+
+import org.apache.flume.ChannelException;
+import org.apache.flume.Event;
+import org.apache.flume.channel.ChannelProcessor;
+import org.apache.flume.event.EventBuilder;
+import org.apache.flume.instrumentation.SourceCounter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class TestAsyncChannelStage {
+
+    private static List<Event> events(int count) {
+        List<Event> events = new ArrayList<Event>();
+        for (int i = 0; i < count; i++) {
+            events.add(EventBuilder.withBody(("event " + i).getBytes()));
+        }
+        return events;
+    }
+
+    /**
+     * Records the size of every transaction, blocks until released and fails
+     * while failures remain.
+     */
+    private static class RecordingChannelProcessor extends ChannelProcessor {
+        final List<Integer> transactions = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile int failures;
+
+        RecordingChannelProcessor() {
+            super(null);
+        }
+
+        @Override
+        public void processEventBatch(List<Event> events) {
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                throw new ChannelException("interrupted", ex);
+            }
+            if (failures > 0) {
+                failures--;
+                throw new ChannelException("channel full");
+            }
+            transactions.add(events.size());
+        }
+    }
+
+    @Test
+    public void testCoalescesStagedBatches() throws Exception {
+        RecordingChannelProcessor processor = new RecordingChannelProcessor();
+        AsyncChannelStage stage = new AsyncChannelStage("test", processor, new SourceCounter("test"),
+                100, 50, 0, 1, false, 10, null, null);
+        stage.start();
+        List<AsyncChannelStage.Batch> batches = new ArrayList<AsyncChannelStage.Batch>();
+        for (int i = 0; i < 20; i++) {
+            AsyncChannelStage.Batch batch = new AsyncChannelStage.Batch(events(5));
+            Assert.assertTrue(stage.offer(batch));
+            batches.add(batch);
+        }
+        // the buffer holds 100 events
+        Assert.assertFalse(stage.offer(new AsyncChannelStage.Batch(events(5))));
+        Assert.assertFalse(stage.canStage(101));
+        processor.release.countDown();
+        for (AsyncChannelStage.Batch batch : batches) {
+            Assert.assertTrue(batch.await(5000));
+            Assert.assertNull(batch.getFailure());
+        }
+        stage.stop();
+        int total = 0;
+        for (int size : processor.transactions) {
+            Assert.assertTrue(size <= 50);
+            total += size;
+        }
+        Assert.assertEquals(100, total);
+        Assert.assertTrue(processor.transactions.size() < 20);
+    }
+
+    @Test
+    public void testBatchTimeoutCoalescesRequests() throws Exception {
+        RecordingChannelProcessor processor = new RecordingChannelProcessor();
+        processor.release.countDown();
+        AsyncChannelStage stage = new AsyncChannelStage("test", processor, new SourceCounter("test"),
+                100, 10, 5000, 1, false, 10, null, null);
+        stage.start();
+        List<AsyncChannelStage.Batch> batches = new ArrayList<AsyncChannelStage.Batch>();
+        for (int i = 0; i < 5; i++) {
+            AsyncChannelStage.Batch batch = new AsyncChannelStage.Batch(events(2));
+            Assert.assertTrue(stage.offer(batch));
+            batches.add(batch);
+            Thread.sleep(20);
+        }
+        for (AsyncChannelStage.Batch batch : batches) {
+            Assert.assertTrue(batch.await(5000));
+        }
+        stage.stop();
+        Assert.assertEquals(Collections.singletonList(10), processor.transactions);
+    }
+
+    @Test
+    public void testCommitFailureIsReported() throws Exception {
+        RecordingChannelProcessor processor = new RecordingChannelProcessor();
+        processor.failures = 1;
+        processor.release.countDown();
+        AsyncChannelStage stage = new AsyncChannelStage("test", processor, new SourceCounter("test"),
+                100, 50, 0, 1, false, 10, null, null);
+        stage.start();
+        AsyncChannelStage.Batch batch = new AsyncChannelStage.Batch(events(5));
+        Assert.assertTrue(stage.offer(batch));
+        Assert.assertTrue(batch.await(5000));
+        Assert.assertTrue(batch.getFailure() instanceof ChannelException);
+        stage.stop();
+    }
+
+    @Test
+    public void testAckOnStageRetries() throws Exception {
+        RecordingChannelProcessor processor = new RecordingChannelProcessor();
+        processor.failures = 2;
+        processor.release.countDown();
+        AsyncChannelStage stage = new AsyncChannelStage("test", processor, new SourceCounter("test"),
+                100, 50, 0, 1, true, 10, null, null);
+        stage.start();
+        AsyncChannelStage.Batch batch = new AsyncChannelStage.Batch(events(5));
+        Assert.assertTrue(stage.offer(batch));
+        Assert.assertTrue(batch.await(5000));
+        Assert.assertNull(batch.getFailure());
+        Assert.assertEquals(Collections.singletonList(5), processor.transactions);
+        stage.stop();
+    }
+}
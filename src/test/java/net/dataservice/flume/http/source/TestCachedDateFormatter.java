@@ -0,0 +1,37 @@
+package net.dataservice.flume.http.source;
+
+import org.joda.time.format.DateTimeFormat;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestCachedDateFormatter {
+
+    @Test
+    public void testFormat() {
+        CachedDateFormatter formatter = CachedDateFormatter.forPattern("yyyyMMdd HH:mm:ss");
+        long now = System.currentTimeMillis();
+        for (long millis : new long[]{now, now + 1, now + 999, now + 1000, now - 86400000L, 0L, -1L}) {
+            Assert.assertEquals(DateTimeFormat.forPattern("yyyyMMdd HH:mm:ss").print(millis), formatter.format(millis));
+        }
+    }
+
+    @Test
+    public void testSameSecondIsCached() {
+        CachedDateFormatter formatter = CachedDateFormatter.forPattern("yyyyMMdd");
+        long second = System.currentTimeMillis() / 1000 * 1000;
+        Assert.assertSame(formatter.format(second), formatter.format(second + 999));
+        Assert.assertSame(formatter, CachedDateFormatter.forPattern("yyyyMMdd"));
+    }
+
+    @Test
+    public void testFractionOfSecond() {
+        CachedDateFormatter formatter = CachedDateFormatter.forPattern("HH:mm:ss.SSS");
+        long second = System.currentTimeMillis() / 1000 * 1000;
+        for (long millis : new long[]{second, second + 1, second + 999}) {
+            Assert.assertEquals(DateTimeFormat.forPattern("HH:mm:ss.SSS").print(millis), formatter.format(millis));
+        }
+        Assert.assertTrue(CachedDateFormatter.hasFractionOfSecond("yyyy-MM-dd'T'HH:mm:ss,S"));
+        Assert.assertFalse(CachedDateFormatter.hasFractionOfSecond("'Seconds' ss"));
+        Assert.assertFalse(CachedDateFormatter.hasFractionOfSecond("'O''S' ss"));
+    }
+}
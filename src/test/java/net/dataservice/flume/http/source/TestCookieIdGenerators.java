@@ -0,0 +1,45 @@
+package net.dataservice.flume.http.source;
+
+import org.apache.flume.Context;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+public class TestCookieIdGenerators {
+
+    @Test
+    public void testAliases() throws Exception {
+        Context context = new Context();
+        Assert.assertTrue(CookieIdGenerators.create("uuid", context) instanceof CookieIdGenerators.UuidGenerator);
+        Assert.assertTrue(CookieIdGenerators.create("RANDOM", context) instanceof CookieIdGenerators.RandomGenerator);
+        Assert.assertTrue(CookieIdGenerators.create("time", context) instanceof CookieIdGenerators.TimeGenerator);
+        Assert.assertTrue(CookieIdGenerators.create(CookieIdGenerators.UuidGenerator.class.getName(), context)
+                instanceof CookieIdGenerators.UuidGenerator);
+    }
+
+    @Test
+    public void testTimeGeneratorIsUniqueAndIncreasing() throws Exception {
+        Context context = new Context();
+        context.put(CustomizedHttpSourceConstants.COOKIE_ID_NODE, "513");
+        CookieIdGenerator generator = CookieIdGenerators.create("time", context);
+        Set<Long> ids = new HashSet<Long>();
+        long previous = Long.MIN_VALUE;
+        for (int i = 0; i < 100000; i++) {
+            long id = generator.nextId();
+            Assert.assertTrue(id > previous);
+            Assert.assertEquals(513, (id >>> 12) & 1023);
+            ids.add(id);
+            previous = id;
+        }
+        Assert.assertEquals(100000, ids.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTimeGeneratorInvalidNode() throws Exception {
+        Context context = new Context();
+        context.put(CustomizedHttpSourceConstants.COOKIE_ID_NODE, "1024");
+        CookieIdGenerators.create("time", context);
+    }
+}
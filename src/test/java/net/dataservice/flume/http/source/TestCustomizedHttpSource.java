@@ -0,0 +1,112 @@
+package net.dataservice.flume.http.source;
+
+import org.apache.flume.Context;
+import org.apache.flume.channel.ChannelProcessor;
+import org.apache.flume.channel.ChannelSelector;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mortbay.jetty.Connector;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLServerSocket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+
+public class TestCustomizedHttpSource {
+
+    private static final String INCLUDED_SUITE = "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256";
+    private static final String EXCLUDED_SUITE = "TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384";
+
+    private static Context sslContext() {
+        Context context = new Context();
+        context.put("port", "0");
+        context.put("enableSSL", "true");
+        context.put("keystore", "src/test/resources/keystore.jks");
+        context.put("keystorePassword", "password");
+        context.put("handler", CustomizedJSONHandler.class.getName());
+        return context;
+    }
+
+    @Test
+    public void testFilterEnabled() throws Exception {
+        String[] enabled = {"TLSv1", "SSLv3", "TLSv1.2"};
+        Assert.assertEquals(Arrays.asList("TLSv1", "TLSv1.2"), Arrays.asList(CustomizedHttpSource.filterEnabled(
+                enabled, Collections.<String>emptyList(), Arrays.asList("SSLv3"))));
+        Assert.assertEquals(Arrays.asList("TLSv1.2"), Arrays.asList(CustomizedHttpSource.filterEnabled(
+                enabled, Arrays.asList("TLSv1.2", "TLSv1.3"), Arrays.asList("SSLv3"))));
+        Assert.assertEquals(0, CustomizedHttpSource.filterEnabled(
+                enabled, Arrays.asList("SSLv3"), Arrays.asList("SSLv3")).length);
+    }
+
+    private static Context cipherContext(String connector) {
+        Context context = sslContext();
+        context.put("ssl.connector", connector);
+        context.put("excludeProtocols", "TLSv1");
+        context.put("ssl.includeCipherSuites", INCLUDED_SUITE + " " + EXCLUDED_SUITE);
+        context.put("ssl.excludeCipherSuites", EXCLUDED_SUITE);
+        return context;
+    }
+
+    private static CustomizedHttpSource startSource(Context context) {
+        CustomizedHttpSource source = new CustomizedHttpSource();
+        source.setName("testSsl");
+        source.setChannelProcessor(new ChannelProcessor(mock(ChannelSelector.class)));
+        source.configure(context);
+        source.start();
+        return source;
+    }
+
+    private static void assertEnabled(String[] protocols, String[] cipherSuites) {
+        List<String> enabledProtocols = Arrays.asList(protocols);
+        Assert.assertFalse(enabledProtocols.isEmpty());
+        Assert.assertFalse(enabledProtocols.contains("SSLv3"));
+        Assert.assertFalse(enabledProtocols.contains("TLSv1"));
+        Assert.assertEquals(Arrays.asList(INCLUDED_SUITE), Arrays.asList(cipherSuites));
+    }
+
+    @Test
+    public void testNioSslConnector() throws Exception {
+        Context context = cipherContext("nio");
+        context.put("ssl.sessionCacheSize", "1000");
+        context.put("ssl.sessionTimeout", "600");
+        CustomizedHttpSource source = startSource(context);
+        try {
+            Connector connector = source.getConnector();
+            Assert.assertTrue(connector instanceof CustomizedHttpSource.HTTPSourceSelectChannelConnector);
+            Assert.assertTrue(connector.getLocalPort() > 0);
+            CustomizedHttpSource.HTTPSourceSelectChannelConnector sslConnector =
+                    (CustomizedHttpSource.HTTPSourceSelectChannelConnector) connector;
+            SSLEngine engine = sslConnector.createSSLEngine();
+            assertEnabled(engine.getEnabledProtocols(), engine.getEnabledCipherSuites());
+            SSLContext sslContext = sslConnector.createSSLContext();
+            Assert.assertEquals(1000, sslContext.getServerSessionContext().getSessionCacheSize());
+            Assert.assertEquals(600, sslContext.getServerSessionContext().getSessionTimeout());
+        } finally {
+            source.stop();
+        }
+    }
+
+    @Test
+    public void testSocketSslConnector() throws Exception {
+        CustomizedHttpSource source = startSource(cipherContext("socket"));
+        try {
+            Connector connector = source.getConnector();
+            Assert.assertTrue(connector instanceof CustomizedHttpSource.HTTPSourceSocketConnector);
+            SSLServerSocket socket = (SSLServerSocket) connector.getConnection();
+            assertEnabled(socket.getEnabledProtocols(), socket.getEnabledCipherSuites());
+        } finally {
+            source.stop();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownSslConnector() throws Exception {
+        Context context = sslContext();
+        context.put("ssl.connector", "blocking");
+        new CustomizedHttpSource().configure(context);
+    }
+}
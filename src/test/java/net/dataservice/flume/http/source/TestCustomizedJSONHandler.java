@@ -0,0 +1,163 @@
+package net.dataservice.flume.http.source;
+
+import com.adaltas.flume.metrics.FlumeMetrics;
+import com.codahale.metrics.MetricRegistry;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.source.http.HTTPBadRequestException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestCustomizedJSONHandler {
+
+    private static final String EVENTS = "[{\"headers\": {\"a\": \"b\", \"c\": 1}, \"body\": \"random_body\"},"
+            + " {\"headers\": {\"e\": \"f\"}, \"body\": \"random_body2\", \"other\": [1, 2]},"
+            + " {\"body\": \"no headers\"}]";
+
+    private CustomizedJSONHandler newHandler(String parser) {
+        Context context = new Context();
+        context.put(CustomizedHttpSourceConstants.PARSER, parser);
+        CustomizedJSONHandler handler = new CustomizedJSONHandler();
+        handler.configure(context);
+        return handler;
+    }
+
+    private HttpServletRequest newRequest(String payload) throws Exception {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getInputStream()).thenReturn(
+                new TestRequestBodyDecoder.BytesServletInputStream(payload.getBytes("UTF-8")));
+        when(request.getHeader("User-Agent")).thenReturn("junit");
+        return request;
+    }
+
+    private void assertEvents(List<Event> events) {
+        Assert.assertEquals(2, events.size());
+        Assert.assertEquals("random_body", new String(events.get(0).getBody()));
+        Assert.assertEquals("b", events.get(0).getHeaders().get("a"));
+        Assert.assertEquals("1", events.get(0).getHeaders().get("c"));
+        Assert.assertEquals("junit", events.get(0).getHeaders().get("User-Agent"));
+        Assert.assertEquals("-", events.get(0).getHeaders().get("Referer"));
+        Assert.assertEquals("random_body2", new String(events.get(1).getBody()));
+        Assert.assertEquals("f", events.get(1).getHeaders().get("e"));
+        Assert.assertEquals("127.0.0.1", events.get(1).getHeaders().get("X-Forwarded-For"));
+    }
+
+    @Test
+    public void testGsonParser() throws Exception {
+        assertEvents(newHandler("gson").getEvents(newRequest(EVENTS), null));
+    }
+
+    @Test
+    public void testStreamingParser() throws Exception {
+        assertEvents(newHandler("streaming").getEvents(newRequest(EVENTS), null));
+    }
+
+    @Test
+    public void testCookieId() throws Exception {
+        for (String generator : new String[]{"uuid", "random", "time"}) {
+            Context context = new Context();
+            context.put(CustomizedHttpSourceConstants.COOKIE_ID_GENERATOR, generator);
+            CustomizedJSONHandler handler = new CustomizedJSONHandler();
+            handler.configure(context);
+            List<Event> events = handler.getEvents(newRequest(EVENTS), null);
+            Assert.assertTrue(events.get(0).getHeaders().get("uuid_tt_dd").matches("-?\\d+_\\d{8}"));
+        }
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        for (String parser : new String[]{"gson", "streaming"}) {
+            Context context = new Context();
+            context.put(CustomizedHttpSourceConstants.PARSER, parser);
+            context.put(CustomizedHttpSourceConstants.VALIDATE_HEADERS, "a");
+            CustomizedJSONHandler handler = new CustomizedJSONHandler();
+            handler.configure(context);
+            handler.setMetrics(SourceMetrics.configure("testMetrics-" + parser, context));
+            String events = "[{\"headers\": {\"a\": \"b\"}, \"body\": \"valid\"},"
+                    + " {\"headers\": {\"a\": \"b c\"}, \"body\": \"invalid\"}]";
+            Assert.assertEquals(1, handler.getEvents(newRequest(events), null).size());
+
+            MetricRegistry registry = FlumeMetrics.registry();
+            Assert.assertEquals(1, registry.timer("source.testMetrics-" + parser + ".parse").getCount());
+            Assert.assertEquals(1, registry.timer("source.testMetrics-" + parser + ".enrichment").getCount());
+            Assert.assertEquals(1, registry.histogram("source.testMetrics-" + parser + ".events").getCount());
+            Assert.assertEquals(1, registry.meter("source.testMetrics-" + parser + ".rejected").getCount());
+        }
+    }
+
+    @Test
+    public void testStreamingParserEmptyBody() throws Exception {
+        Assert.assertEquals(0, newHandler("streaming").getEvents(newRequest(""), null).size());
+    }
+
+    @Test(expected = HTTPBadRequestException.class)
+    public void testStreamingParserInvalidJson() throws Exception {
+        newHandler("streaming").getEvents(newRequest("[{\"headers\": {\"a\": \"b\"}, \"body\": "), null);
+    }
+
+    @Test(expected = HTTPBadRequestException.class)
+    public void testStreamingParserNestedHeader() throws Exception {
+        newHandler("streaming").getEvents(newRequest("[{\"headers\": {\"a\": {\"b\": 1}}}]"), null);
+    }
+
+    private static void assertTooLarge(CustomizedJSONHandler handler, HttpServletRequest request,
+                                       RequestLimits.Reason reason) throws Exception {
+        try {
+            handler.getEvents(request, null);
+            Assert.fail("Request exceeding the " + reason + " limit accepted");
+        } catch (RequestTooLargeException ex) {
+            Assert.assertEquals(reason, ex.getReason());
+        }
+    }
+
+    @Test
+    public void testRequestLimits() throws Exception {
+        for (String parser : new String[]{"gson", "streaming"}) {
+            Context context = new Context();
+            context.put(CustomizedHttpSourceConstants.PARSER, parser);
+            context.put(CustomizedHttpSourceConstants.MAX_EVENTS, "3");
+            context.put(CustomizedHttpSourceConstants.MAX_HEADERS, "2");
+            context.put(CustomizedHttpSourceConstants.MAX_HEADER_VALUE_LENGTH, "3");
+            CustomizedJSONHandler handler = new CustomizedJSONHandler();
+            handler.configure(context);
+
+            Assert.assertEquals(2, handler.getEvents(newRequest(EVENTS), null).size());
+            assertTooLarge(handler, newRequest("[{\"headers\": {}}, {\"headers\": {}}, {\"headers\": {}},"
+                    + " {\"headers\": {}}]"),
+                    RequestLimits.Reason.EVENTS);
+            assertTooLarge(handler, newRequest("[{\"headers\": {\"a\": \"1\", \"b\": \"2\", \"c\": \"3\"}}]"),
+                    RequestLimits.Reason.HEADERS);
+            assertTooLarge(handler, newRequest("[{\"headers\": {\"a\": \"1234\"}}]"),
+                    RequestLimits.Reason.HEADER_VALUE_LENGTH);
+
+            RequestLimits limits = handler.getRequestLimits();
+            Assert.assertEquals(1, limits.getRejectedCount(RequestLimits.Reason.EVENTS));
+            Assert.assertEquals(1, limits.getRejectedCount(RequestLimits.Reason.HEADERS));
+            Assert.assertEquals(1, limits.getRejectedCount(RequestLimits.Reason.HEADER_VALUE_LENGTH));
+        }
+    }
+
+    @Test
+    public void testMaxBodySize() throws Exception {
+        Context context = new Context();
+        context.put(CustomizedHttpSourceConstants.PARSER, "streaming");
+        context.put(CustomizedHttpSourceConstants.MAX_BODY_SIZE, "64");
+        CustomizedJSONHandler handler = new CustomizedJSONHandler();
+        handler.configure(context);
+        assertTooLarge(handler, newRequest(EVENTS), RequestLimits.Reason.BODY_SIZE);
+
+        HttpServletRequest request = newRequest("[]");
+        when(request.getContentLength()).thenReturn(65);
+        assertTooLarge(handler, request, RequestLimits.Reason.BODY_SIZE);
+        verify(request, never()).getInputStream();
+        Assert.assertEquals(2, handler.getRequestLimits().getRejectedCount(RequestLimits.Reason.BODY_SIZE));
+    }
+}
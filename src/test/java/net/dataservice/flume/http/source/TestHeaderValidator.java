@@ -0,0 +1,73 @@
+package net.dataservice.flume.http.source;
+
+import org.apache.flume.Context;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class TestHeaderValidator {
+
+    private static Map<String, String> headers(String... keyValues) {
+        Map<String, String> headers = new HashMap<String, String>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            headers.put(keyValues[i], keyValues[i + 1]);
+        }
+        return headers;
+    }
+
+    public static class EvenLengthRule implements HeaderValueRule {
+        public boolean accept(String header, String value) {
+            return value.length() % 2 == 0;
+        }
+    }
+
+    @Test
+    public void testNoValidation() throws Exception {
+        Assert.assertNull(HeaderValidator.configure(new Context()));
+    }
+
+    @Test
+    public void testDefaultWordCharacters() throws Exception {
+        Context context = new Context();
+        context.put("validate.headers", "app_id, user");
+        HeaderValidator validator = HeaderValidator.configure(context);
+        Assert.assertTrue(validator.validate(headers("app_id", "2aaaaaaaa_2d", "user", "u1")));
+        Assert.assertFalse(validator.validate(headers("app_id", "2aaaaaaaa_2d   2", "user", "u1")));
+        Assert.assertFalse(validator.validate(headers("app_id", "\u00e9", "user", "u1")));
+        Assert.assertFalse(validator.validate(headers("app_id", "", "user", "u1")));
+        Assert.assertFalse(validator.validate(headers("app_id", "a")));
+        Assert.assertEquals(2, validator.getRejectedCount(HeaderValidator.Reason.INVALID_CHARACTER));
+        Assert.assertEquals(2, validator.getRejectedCount(HeaderValidator.Reason.MISSING));
+    }
+
+    @Test
+    public void testHeaderRules() throws Exception {
+        Context context = new Context();
+        context.put("validate.headers", "version,env,id");
+        context.put("validate.header.version.chars", "0-9.\\-");
+        context.put("validate.header.version.maxLength", "8");
+        context.put("validate.header.env.values", "prod, test");
+        context.put("validate.header.id.rule", EvenLengthRule.class.getName());
+        HeaderValidator validator = HeaderValidator.configure(context);
+        Assert.assertTrue(validator.validate(headers("version", "1.0-2", "env", "prod", "id", "ab")));
+        Assert.assertFalse(validator.validate(headers("version", "1.0_2", "env", "prod", "id", "ab")));
+        Assert.assertFalse(validator.validate(headers("version", "1.0.0.0.0", "env", "prod", "id", "ab")));
+        Assert.assertFalse(validator.validate(headers("version", "1", "env", "dev", "id", "ab")));
+        Assert.assertFalse(validator.validate(headers("version", "1", "env", "test", "id", "abc")));
+        Assert.assertEquals(1, validator.getRejectedCount(HeaderValidator.Reason.INVALID_CHARACTER));
+        Assert.assertEquals(1, validator.getRejectedCount(HeaderValidator.Reason.TOO_LONG));
+        Assert.assertEquals(1, validator.getRejectedCount(HeaderValidator.Reason.NOT_ALLOWED));
+        Assert.assertEquals(1, validator.getRejectedCount(HeaderValidator.Reason.REJECTED_BY_RULE));
+    }
+
+    @Test
+    public void testCompileChars() {
+        long[] bitmap = HeaderValidator.compileChars("a-c_\\-");
+        for (char c = 0; c < 128; c++) {
+            boolean expected = (c >= 'a' && c <= 'c') || c == '_' || c == '-';
+            Assert.assertEquals("char " + (int) c, expected, (bitmap[c >> 6] & (1L << c)) != 0);
+        }
+    }
+}
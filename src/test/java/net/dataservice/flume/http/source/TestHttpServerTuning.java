@@ -0,0 +1,42 @@
+package net.dataservice.flume.http.source;
+
+import org.apache.flume.Context;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mortbay.thread.QueuedThreadPool;
+import org.mortbay.thread.ThreadPool;
+
+public class TestHttpServerTuning {
+
+    public static class CustomThreadPool extends QueuedThreadPool {
+    }
+
+    @Test
+    public void testDefaultQueuedPool() throws Exception {
+        ThreadPool pool = HttpServerTuning.configure(new Context()).createThreadPool("http");
+        Assert.assertEquals(QueuedThreadPool.class, pool.getClass());
+    }
+
+    @Test
+    public void testCustomPool() throws Exception {
+        Context context = new Context();
+        context.put("threadPool.type", CustomThreadPool.class.getName());
+        ThreadPool pool = HttpServerTuning.configure(context).createThreadPool("http");
+        Assert.assertEquals(CustomThreadPool.class, pool.getClass());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveValue() throws Exception {
+        Context context = new Context();
+        context.put("connector.acceptors", "0");
+        HttpServerTuning.configure(context);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMinGreaterThanMax() throws Exception {
+        Context context = new Context();
+        context.put("threadPool.minThreads", "20");
+        context.put("threadPool.maxThreads", "10");
+        HttpServerTuning.configure(context);
+    }
+}
@@ -0,0 +1,86 @@
+package net.dataservice.flume.http.source;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+public class TestLayeredHeaderMap {
+
+    private Map<String, String> shared() {
+        Map<String, String> shared = new HashMap<String, String>();
+        shared.put("User-Agent", "junit");
+        shared.put("Referer", "-");
+        return Collections.unmodifiableMap(shared);
+    }
+
+    private Map<String, String> local() {
+        Map<String, String> local = new HashMap<String, String>();
+        local.put("a", "b");
+        local.put("Referer", "spoofed");
+        return local;
+    }
+
+    private Map<String, String> expected() {
+        Map<String, String> expected = local();
+        expected.putAll(shared());
+        return expected;
+    }
+
+    @Test
+    public void testSharedHeadersTakePrecedence() {
+        Map<String, String> headers = new LayeredHeaderMap(local(), shared());
+        Assert.assertEquals(expected(), headers);
+        Assert.assertEquals(expected().hashCode(), headers.hashCode());
+        Assert.assertEquals(3, headers.size());
+        Assert.assertEquals("-", headers.get("Referer"));
+        Assert.assertEquals("b", headers.get("a"));
+        Assert.assertNull(headers.get("c"));
+    }
+
+    @Test
+    public void testWritesDoNotChangeSharedHeaders() {
+        Map<String, String> shared = shared();
+        Map<String, String> first = new LayeredHeaderMap(local(), shared);
+        Map<String, String> second = new LayeredHeaderMap(local(), shared);
+        first.put("timestamp", "1");
+        first.put("User-Agent", "interceptor");
+        first.remove("Referer");
+        Assert.assertEquals("interceptor", first.get("User-Agent"));
+        Assert.assertFalse(first.containsKey("Referer"));
+        Assert.assertEquals(3, first.size());
+        Assert.assertEquals(expected(), second);
+        Assert.assertEquals(shared(), shared);
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        Map<String, String> shared = shared();
+        Map<String, String> headers = new LayeredHeaderMap(local(), shared);
+        Iterator<Map.Entry<String, String>> it = headers.entrySet().iterator();
+        int count = 0;
+        while (it.hasNext()) {
+            Map.Entry<String, String> entry = it.next();
+            count++;
+            if (!"a".equals(entry.getKey())) {
+                it.remove();
+            }
+        }
+        Assert.assertEquals(3, count);
+        Assert.assertEquals(Collections.singletonMap("a", "b"), headers);
+        Assert.assertEquals(shared(), shared);
+    }
+
+    @Test
+    public void testEntrySetValue() {
+        Map<String, String> headers = new LayeredHeaderMap(local(), shared());
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            entry.setValue(entry.getValue() + "!");
+        }
+        Assert.assertEquals("junit!", headers.get("User-Agent"));
+        Assert.assertEquals("b!", headers.get("a"));
+    }
+}
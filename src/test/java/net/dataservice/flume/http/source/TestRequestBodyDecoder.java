@@ -0,0 +1,190 @@
+package net.dataservice.flume.http.source;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.gson.Gson;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.source.http.HTTPBadRequestException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestRequestBodyDecoder {
+
+    private static final String[] FIXTURES = {
+            "example-widget.json", "example-widget-multiple.json", "example-widget-invalid.json"};
+
+    static class BytesServletInputStream extends ServletInputStream {
+        private final ByteArrayInputStream in;
+
+        BytesServletInputStream(byte[] bytes) {
+            this.in = new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return in.read(b, off, len);
+        }
+    }
+
+    private static String fixture(String name) throws IOException {
+        return Files.toString(new File("src/test/resources/schema/" + name), Charsets.UTF_8);
+    }
+
+    /**
+     * Returns the fixtures as a JSON array of events, one per fixture.
+     */
+    private static byte[] fixtureEvents() throws IOException {
+        List<Map<String, Object>> events = new ArrayList<Map<String, Object>>();
+        for (String name : FIXTURES) {
+            Map<String, Object> event = new LinkedHashMap<String, Object>();
+            event.put("headers", Collections.singletonMap("file", name));
+            event.put("body", fixture(name));
+            events.add(event);
+        }
+        return new Gson().toJson(events).getBytes(Charsets.UTF_8);
+    }
+
+    private static byte[] compress(byte[] bytes, String encoding) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OutputStream compressed;
+        if ("gzip".equals(encoding)) {
+            compressed = new GZIPOutputStream(out);
+        } else if ("deflate".equals(encoding)) {
+            compressed = new DeflaterOutputStream(out);
+        } else {
+            compressed = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+        }
+        compressed.write(bytes);
+        compressed.close();
+        return out.toByteArray();
+    }
+
+    private static HttpServletRequest newRequest(byte[] body, String encoding) throws Exception {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getInputStream()).thenReturn(new BytesServletInputStream(body));
+        when(request.getHeader("Content-Encoding")).thenReturn(encoding);
+        when(request.getHeader("User-Agent")).thenReturn("junit");
+        return request;
+    }
+
+    private static CustomizedJSONHandler newHandler(String parser, String maxInflatedSize) {
+        Context context = new Context();
+        context.put(CustomizedHttpSourceConstants.PARSER, parser);
+        if (maxInflatedSize != null) {
+            context.put(CustomizedHttpSourceConstants.MAX_INFLATED_SIZE, maxInflatedSize);
+        }
+        CustomizedJSONHandler handler = new CustomizedJSONHandler();
+        handler.configure(context);
+        return handler;
+    }
+
+    private static void assertFixtureEvents(List<Event> events) throws IOException {
+        Assert.assertEquals(FIXTURES.length, events.size());
+        for (int i = 0; i < FIXTURES.length; i++) {
+            Assert.assertEquals(FIXTURES[i], events.get(i).getHeaders().get("file"));
+            Assert.assertEquals(fixture(FIXTURES[i]), new String(events.get(i).getBody(), Charsets.UTF_8));
+            Assert.assertEquals("junit", events.get(i).getHeaders().get("User-Agent"));
+        }
+    }
+
+    @Test
+    public void testCompressedFixtures() throws Exception {
+        byte[] events = fixtureEvents();
+        for (String parser : new String[]{"gson", "streaming"}) {
+            assertFixtureEvents(newHandler(parser, null).getEvents(
+                    newRequest(compress(events, "gzip"), "gzip"), null));
+            assertFixtureEvents(newHandler(parser, null).getEvents(
+                    newRequest(compress(events, "deflate"), "deflate"), null));
+            assertFixtureEvents(newHandler(parser, null).getEvents(
+                    newRequest(compress(events, "raw"), "Deflate"), null));
+        }
+    }
+
+    @Test
+    public void testGzipFixture() throws Exception {
+        byte[] gzip = Files.toByteArray(new File("src/test/resources/schema/example-widget.json.gz"));
+        Map<?, ?> widget = new Gson().fromJson(
+                RequestBodyDecoder.openReader(newRequest(gzip, "x-gzip"), "UTF-8",
+                        RequestLimits.configure(new Context())), Map.class);
+        Assert.assertEquals(new Gson().fromJson(fixture("example-widget.json"), Map.class), widget);
+    }
+
+    @Test
+    public void testMaxInflatedSize() throws Exception {
+        byte[] events = fixtureEvents();
+        for (String parser : new String[]{"gson", "streaming"}) {
+            try {
+                newHandler(parser, String.valueOf(events.length - 1)).getEvents(
+                        newRequest(compress(events, "gzip"), "gzip"), null);
+                Assert.fail("Request exceeding maxInflatedSize accepted");
+            } catch (RequestTooLargeException ex) {
+                // expected
+            }
+            assertFixtureEvents(newHandler(parser, String.valueOf(events.length)).getEvents(
+                    newRequest(compress(events, "gzip"), "gzip"), null));
+        }
+    }
+
+    @Test
+    public void testMaxBodySize() throws Exception {
+        byte[] gzip = compress(fixtureEvents(), "gzip");
+        Context context = new Context();
+        context.put(CustomizedHttpSourceConstants.MAX_BODY_SIZE, String.valueOf(gzip.length - 1));
+        CustomizedJSONHandler handler = new CustomizedJSONHandler();
+        handler.configure(context);
+        try {
+            handler.getEvents(newRequest(gzip, "gzip"), null);
+            Assert.fail("Request exceeding maxBodySize accepted");
+        } catch (RequestTooLargeException ex) {
+            Assert.assertEquals(RequestLimits.Reason.BODY_SIZE, ex.getReason());
+        }
+        Assert.assertEquals(1, handler.getRequestLimits().getRejectedCount(RequestLimits.Reason.BODY_SIZE));
+
+        context.put(CustomizedHttpSourceConstants.MAX_BODY_SIZE, String.valueOf(gzip.length));
+        handler.configure(context);
+        assertFixtureEvents(handler.getEvents(newRequest(gzip, "gzip"), null));
+    }
+
+    @Test(expected = HTTPBadRequestException.class)
+    public void testInvalidGzip() throws Exception {
+        newHandler("streaming", null).getEvents(newRequest(fixtureEvents(), "gzip"), null);
+    }
+
+    @Test(expected = HTTPBadRequestException.class)
+    public void testTruncatedGzip() throws Exception {
+        byte[] gzip = compress(fixtureEvents(), "gzip");
+        byte[] truncated = new byte[gzip.length / 2];
+        System.arraycopy(gzip, 0, truncated, 0, truncated.length);
+        newHandler("gson", null).getEvents(newRequest(truncated, "gzip"), null);
+    }
+
+    @Test(expected = HTTPBadRequestException.class)
+    public void testUnsupportedEncoding() throws Exception {
+        newHandler("gson", null).getEvents(newRequest(fixtureEvents(), "br"), null);
+    }
+}